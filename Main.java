@@ -1,11 +1,31 @@
+import java.nio.file.Paths;
 import java.util.Random;
 import tetris.*;
 
 public class Main {
 	public static void main(String[] args) throws Exception {
 		double[] constants ={0.7079009304384309, 3.8753536098633123, 7.015729027236182, 5.720294020792873};
-		TetrisAI ai = new TetrisAI(constants);
-		System.out.println(ai.playGame());
+		
+		//with no arguments, play one game
+		if( args.length == 0 ) {
+			TetrisAI ai = new TetrisAI(constants);
+			System.out.println(ai.playGame());
+			return;
+		}
+		
+		//otherwise play a batch: Main games [seed [replays]]
+		int games = Integer.parseInt(args[0]);
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		ReplayWriter replays = args.length > 2 ? new ReplayWriter(Paths.get(args[2])) : null;
+		Metrics.registerMBean();
+		TetrisBatch batch = new TetrisBatch();
+		batch.setReplays(replays);
+		System.out.println(batch.playGames(constants, seed, games));
+		batch.shutdown();
+		if( replays != null ) {
+			replays.close();
+		}
+		System.out.print(Metrics.snapshot());
 	}
 
 }
@@ -0,0 +1,83 @@
+package tetris;
+
+/**
+ * A fixed corpus of realistic mid-game positions for the benchmarks.
+ *
+ * The positions come from seeded games played with the constants from
+ * Main, so every run benchmarks the same boards. Each position is the
+ * board just before a piece is added, along with that piece, and the
+ * board just after it was placed but before its lines were cleared.
+ */
+public class BoardCorpus {
+
+	/**
+	 * The AI constants from Main.
+	 */
+	final static double[] CONSTANTS = {0.7079009304384309, 3.8753536098633123, 7.015729027236182, 5.720294020792873};
+
+	/**
+	 * The boards before each piece, the pieces, and
+	 * the boards after each piece was placed, with the
+	 * rows that piece covered.
+	 */
+	final Board[] before;
+	final int[] pieces;
+	final Board[] placed;
+	final int[] placedBottom;
+	final int[] placedTop;
+
+	/**
+	 * Build a corpus, taking a position every few pieces
+	 * from games played from the given seed.
+	 * @param size the number of positions
+	 * @param seed the seed of the first game
+	 */
+	BoardCorpus(int size, long seed) {
+		before = new Board[size];
+		pieces = new int[size];
+		placed = new Board[size];
+		placedBottom = new int[size];
+		placedTop = new int[size];
+		
+		int n = 0;
+		while( n < size ) {
+			Tetris t = new Tetris(CONSTANTS);
+			PieceSource source = new UniformPieceSource(seed++);
+			
+			//skip the start of the game, then take every 7th piece
+			for(int count=0; !t.over && n < size; count++) {
+				int piece = source.next();
+				boolean take = count >= 50 && count % 7 == 0;
+				if( take ) {
+					before[n] = copy(t.board);
+					pieces[n] = piece;
+				}
+				
+				t.addPiece(piece);
+				t.makeMove();
+				
+				if( take ) {
+					if( t.over ) {
+						break;
+					}
+					placed[n] = copy(t.board);
+					placedBottom[n] = t.lastBottom;
+					placedTop[n] = t.lastTop;
+					n++;
+				}
+				t.tetrisify();
+			}
+		}
+	}
+
+	/**
+	 * Copy a board.
+	 * @param board the board
+	 * @return the copy
+	 */
+	static Board copy(Board board) {
+		Board copy = new Board(board.width, board.height);
+		copy.copyFrom(board);
+		return copy;
+	}
+}
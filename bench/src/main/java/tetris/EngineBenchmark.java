@@ -0,0 +1,124 @@
+package tetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for the engine hot paths, run over every
+ * position of a fixed BoardCorpus. Scores are per position.
+ *
+ * Run with -prof gc to see the allocation rate of each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class EngineBenchmark {
+
+	/**
+	 * The number of positions in the corpus.
+	 */
+	final static int POSITIONS = 256;
+
+	BoardCorpus corpus;
+	/**
+	 * A game whose board is reset to each position, and
+	 * a piece to drop and score.
+	 */
+	Tetris game;
+	Piece piece;
+
+	@Setup
+	public void setup() {
+		corpus = new BoardCorpus(POSITIONS, 1);
+		game = new Tetris(BoardCorpus.CONSTANTS);
+		piece = new Piece(0, game.DROP_POINT, BoardCorpus.CONSTANTS);
+	}
+
+	/**
+	 * Drop each position's piece, in its first rotation,
+	 * from the middle of the board.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void drop(Blackhole bh) {
+		for(int i=0; i<POSITIONS; i++) {
+			piece.reset(corpus.pieces[i], game.DROP_POINT.x, game.DROP_POINT.y);
+			piece.drop(corpus.before[i]);
+			bh.consume(piece.center.y);
+		}
+	}
+
+	/**
+	 * Score each position's piece, dropped in its first
+	 * rotation from the middle of the board.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void score(Blackhole bh) {
+		for(int i=0; i<POSITIONS; i++) {
+			piece.reset(corpus.pieces[i], game.DROP_POINT.x, game.DROP_POINT.y);
+			piece.drop(corpus.before[i]);
+			bh.consume(piece.score(corpus.before[i]));
+		}
+	}
+
+	/**
+	 * Find and make the best move for each position's piece.
+	 * This includes copying the position onto the game board.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void makeMove(Blackhole bh) {
+		for(int i=0; i<POSITIONS; i++) {
+			game.board.copyFrom(corpus.before[i]);
+			game.over = false;
+			game.addPiece(corpus.pieces[i]);
+			bh.consume(game.makeMove());
+		}
+	}
+
+	/**
+	 * Clear the lines of each position just after its piece
+	 * was placed. This includes copying the position onto
+	 * the game board.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void tetrisify(Blackhole bh) {
+		for(int i=0; i<POSITIONS; i++) {
+			game.board.copyFrom(corpus.placed[i]);
+			game.lastBottom = corpus.placedBottom[i];
+			game.lastTop = corpus.placedTop[i];
+			game.tetrisify();
+			bh.consume(game.tetrises);
+		}
+	}
+
+	/**
+	 * Copy each position onto the game board, as makeMove and
+	 * tetrisify do, to show how much of their time that takes.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void copyBoard(Blackhole bh) {
+		for(int i=0; i<POSITIONS; i++) {
+			game.board.copyFrom(corpus.placed[i]);
+			bh.consume(game.board);
+		}
+	}
+}
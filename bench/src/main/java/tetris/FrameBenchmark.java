@@ -0,0 +1,60 @@
+package tetris;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A benchmark for reading the piece off the screen, with an
+ * in-memory screen so it runs headless: one capture of a region
+ * of the given size through a FramePoller, then the piece of
+ * its corner pixel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameBenchmark {
+
+	@Param({"1", "64"})
+	int size;
+
+	TetrisAIPlayer player;
+
+	@Setup
+	public void setup() {
+		player = new TetrisFriendsPlayer();
+
+		//a screen of stripes of the piece colors
+		BufferedImage screen = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+		for(int y=0; y<screen.getHeight(); y++) {
+			for(int x=0; x<screen.getWidth(); x++) {
+				screen.setRGB(x, y, player.pieces[(x / 8) % player.pieces.length].getRGB());
+			}
+		}
+
+		player.PIECE_X = 320;
+		player.PIECE_Y = 240;
+		player.poller = new FramePoller(new ImageFrameSource(screen), new Rectangle(320, 240, size, size), 0);
+	}
+
+	@Benchmark
+	public int detect() {
+		player.poller.capture();
+		return player.pieceAt(player.PIECE_X, player.PIECE_Y);
+	}
+}
@@ -0,0 +1,45 @@
+package tetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A benchmark for whole-game throughput through TetrisAI.playGame,
+ * with a fixed seed so every run plays the same game. Divide by the
+ * pieces of the game (printed at setup) for the time per piece.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class GameBenchmark {
+
+	@Param({"42"})
+	long seed;
+
+	TetrisAI ai;
+
+	@Setup
+	public void setup() throws InterruptedException {
+		ai = new TetrisAI(BoardCorpus.CONSTANTS);
+		System.out.println("\n" + ai.playGame(seed));
+	}
+
+	@Benchmark
+	public GameResult playGame() throws InterruptedException {
+		return ai.playGame(seed);
+	}
+}
@@ -0,0 +1,85 @@
+package tetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for playing a batch of capped games on one thread:
+ * in lockstep (see LockstepGames), with the boards on and off the
+ * heap, and one at a time through TetrisAI.playGame. Both play the
+ * same games, so the times compare directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class LockstepBenchmark {
+
+	/**
+	 * The number of games, and the most pieces of each.
+	 */
+	@Param({"4096"})
+	int games;
+	@Param({"200"})
+	long maxPieces;
+
+	long[] seeds;
+	LockstepGames heap;
+	LockstepGames offHeap;
+	TetrisAI ai;
+
+	@Setup
+	public void setup() {
+		seeds = new long[games];
+		for(int i=0; i<games; i++) {
+			seeds[i] = i;
+		}
+		heap = new LockstepGames(BoardCorpus.CONSTANTS, false);
+		heap.setBudget(maxPieces, 0);
+		offHeap = new LockstepGames(BoardCorpus.CONSTANTS, true);
+		offHeap.setBudget(maxPieces, 0);
+		ai = new TetrisAI(BoardCorpus.CONSTANTS);
+		ai.setBudget(maxPieces, 0);
+	}
+
+	/**
+	 * Play the games in lockstep, with the boards on the heap.
+	 */
+	@Benchmark
+	public BatchResult lockstepHeap() {
+		return heap.play(seeds);
+	}
+
+	/**
+	 * Play the games in lockstep, with the boards off the heap.
+	 */
+	@Benchmark
+	public BatchResult lockstepOffHeap() {
+		return offHeap.play(seeds);
+	}
+
+	/**
+	 * Play the games one at a time.
+	 */
+	@Benchmark
+	public long oneAtATime() throws InterruptedException {
+		long pieces = 0;
+		for(long seed: seeds) {
+			pieces += ai.playGame(seed).pieces;
+		}
+		return pieces;
+	}
+}
@@ -0,0 +1,67 @@
+package tetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A benchmark for the beam search with tucks (see Reachability)
+ * on a board with three overhanging ceilings, open on the right,
+ * where a piece has many more placements than columns and
+ * rotations. Setup checks that it does, and that the search
+ * finds a move, so this also guards the search against boards
+ * with more moves than a straight drop can give.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class ReachabilityBenchmark {
+
+	/**
+	 * The T piece, which is searched with a T in the preview.
+	 */
+	final static int T = 3;
+
+	Tetris game;
+	int[] preview = {T};
+
+	@Setup
+	public void setup() {
+		game = new Tetris(10, 19, BoardCorpus.CONSTANTS);
+		for(int y: new int[] {3, 7, 11}) {
+			for(int x=0; x<7; x++) {
+				game.board.fill(x, y);
+			}
+		}
+		game.setTucks(true);
+		game.search = new BeamSearch(2, 1, 0);
+
+		int moves = game.findMoves(game.board, T);
+		if( moves <= 4 * game.board.width ) {
+			throw new IllegalStateException("only " + moves + " moves under the overhangs");
+		}
+		if( game.search.search(game, T, preview, 1) == null ) {
+			throw new IllegalStateException("no move found under the overhangs");
+		}
+	}
+
+	/**
+	 * Search the T piece and the T after it.
+	 */
+	@Benchmark
+	public int[] search() {
+		return game.search.search(game, T, preview, 1);
+	}
+}
@@ -0,0 +1,110 @@
+package tetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for scoring every candidate move of a piece (see
+ * Candidates), in plain Java and with the Vector API, over the
+ * moves of every position of a fixed BoardCorpus, with a weight
+ * on every feature. Scores are per position.
+ *
+ * The fork adds the jdk.incubator.vector module, which the
+ * Vector API needs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class ScoringBenchmark {
+
+	/**
+	 * The number of positions in the corpus.
+	 */
+	final static int POSITIONS = 256;
+	/**
+	 * The AI constants from Main, with a weight for
+	 * every feature of the board too.
+	 */
+	final static double[] CONSTANTS = {0.7079009304384309, 3.8753536098633123, 7.015729027236182, 5.720294020792873,
+			-0.1, -0.5, -0.2, -2, -0.3, -0.3, -0.4};
+
+	BoardCorpus corpus;
+	/**
+	 * A game to find the moves in, and its evaluator.
+	 */
+	Tetris game;
+	Evaluator evaluator;
+	/**
+	 * The moves of each position.
+	 */
+	Candidates[] moves;
+
+	@Setup
+	public void setup() {
+		corpus = new BoardCorpus(POSITIONS, 1);
+		game = new Tetris(CONSTANTS);
+		moves = new Candidates[POSITIONS];
+		for(int i=0; i<POSITIONS; i++) {
+			int count = game.findMoves(corpus.before[i], corpus.pieces[i]);
+			moves[i] = new Candidates(count);
+			moves[i].count = count;
+			for(int f=0; f<Evaluator.FEATURES; f++) {
+				System.arraycopy(game.candidates.features[f], 0, moves[i].features[f], 0, count);
+			}
+		}
+		evaluator = game.evaluator;
+	}
+
+	/**
+	 * Score the moves of each position in plain Java.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void scoreScalar(Blackhole bh) {
+		for(int i=0; i<POSITIONS; i++) {
+			Candidates c = moves[i];
+			Evaluator.score(evaluator.weights, evaluator.active, evaluator.activeCount, c.features, c.score, c.count);
+			bh.consume(c.score);
+		}
+	}
+
+	/**
+	 * Score the moves of each position with the Vector API.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void scoreVector(Blackhole bh) {
+		for(int i=0; i<POSITIONS; i++) {
+			Candidates c = moves[i];
+			VectorScoring.score(evaluator.weights, evaluator.active, evaluator.activeCount, c.features, c.score, c.count);
+			bh.consume(c.score);
+		}
+	}
+
+	/**
+	 * Find and score every move of each position, with the
+	 * features of the board after each move.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void findMoves(Blackhole bh) {
+		for(int i=0; i<POSITIONS; i++) {
+			bh.consume(game.findMoves(corpus.before[i], corpus.pieces[i]));
+		}
+	}
+}
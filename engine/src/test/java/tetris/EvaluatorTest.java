@@ -0,0 +1,93 @@
+package tetris;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the board features of Evaluator, against a count
+ * of each square of the board.
+ */
+class EvaluatorTest {
+
+	/**
+	 * The column transitions of a board, a square at a time: every
+	 * change between filled and empty going up each column, from
+	 * the floor, which is filled, to the empty space above the top.
+	 */
+	static int columnTransitions(Board board) {
+		int transitions = 0;
+		for(int x=0; x<board.width; x++) {
+			boolean below = true;
+			for(int y=0; y<board.height; y++) {
+				boolean filled = board.isFilled(x, y);
+				if( filled != below ) {
+					transitions++;
+				}
+				below = filled;
+			}
+			if( below ) {
+				transitions++;
+			}
+		}
+		return transitions;
+	}
+
+	/**
+	 * A board with random blocks under random column heights,
+	 * and one column higher than all the rest.
+	 */
+	static Board tallestColumn(int width, int height, SplittableRandom random) {
+		Board board = new Board(width, height);
+		int tallest = random.nextInt(width);
+		int top = 1 + random.nextInt(height);
+		for(int x=0; x<width; x++) {
+			int h = x == tallest ? top : random.nextInt(top);
+			for(int y=0; y<h; y++) {
+				if( y == h-1 || random.nextInt(4) != 0 ) {
+					board.fill(x, y);
+				}
+			}
+		}
+		return board;
+	}
+
+	@Test
+	void columnTransitionsCountTheTallestColumn() {
+		Evaluator evaluator = new Evaluator(new double[Evaluator.FEATURES]);
+		double[] features = new double[Evaluator.FEATURES];
+		SplittableRandom random = new SplittableRandom(1);
+		for(int width: new int[] {1, 10, 64, 70, 130}) {
+			for(int i=0; i<200; i++) {
+				Board board = tallestColumn(width, 24, random);
+				evaluator.boardFeatures(board, features);
+				assertEquals(columnTransitions(board), (int) features[Evaluator.COLUMN_TRANSITIONS],
+						"column transitions of a " + width + " wide board");
+			}
+		}
+	}
+
+	@Test
+	void columnTransitionsOfAFullHeightColumn() {
+		Evaluator evaluator = new Evaluator(new double[Evaluator.FEATURES]);
+		double[] features = new double[Evaluator.FEATURES];
+		Board board = new Board(10, 6);
+		for(int y=0; y<6; y++) {
+			board.fill(4, y);
+		}
+		board.fill(0, 0);
+		evaluator.boardFeatures(board, features);
+		assertEquals(columnTransitions(board), (int) features[Evaluator.COLUMN_TRANSITIONS]);
+		assertEquals(10, (int) features[Evaluator.COLUMN_TRANSITIONS]);
+	}
+
+	@Test
+	void columnTransitionsOfAnEmptyBoard() {
+		Evaluator evaluator = new Evaluator(new double[Evaluator.FEATURES]);
+		double[] features = new double[Evaluator.FEATURES];
+		evaluator.boardFeatures(new Board(10, 6), features);
+		assertEquals(10, (int) features[Evaluator.COLUMN_TRANSITIONS]);
+	}
+}
@@ -0,0 +1,74 @@
+package tetris;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for reading piece files, written by MappedPieceSource
+ * or corrupted by hand.
+ */
+class MappedPieceSourceTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void readsThePiecesWritten() throws IOException {
+		Path file = dir.resolve("pieces");
+		int[] pieces = {0, 1, 2, 3, 4, 5, 6, 6, 5, 4, 3, 2, 1, 0, 3};
+		MappedPieceSource.write(file, pieces);
+
+		MappedPieceSource source = new MappedPieceSource(file);
+		for(int piece: pieces) {
+			assertEquals(piece, source.next());
+		}
+		assertEquals(-1, source.next());
+	}
+
+	@Test
+	void rejectsAPieceThatIsNotAType() throws IOException {
+		Path file = dir.resolve("pieces");
+		MappedPieceSource.write(file, new int[] {0, 1, 2, 3, 4, 5, 6, 0});
+
+		//set the third piece, bits 6 to 8, to 7
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[MappedPieceSource.HEADER] |= (byte) 0xc0;
+		bytes[MappedPieceSource.HEADER + 1] |= 0x01;
+		Files.write(file, bytes);
+
+		MappedPieceSource source = new MappedPieceSource(file);
+		assertEquals(0, source.next());
+		assertEquals(1, source.next());
+		assertThrows(IllegalStateException.class, source::next);
+	}
+
+	@Test
+	void rejectsACountThatOverflows() throws IOException {
+		Path file = dir.resolve("pieces");
+		ByteBuffer header = ByteBuffer.allocate(MappedPieceSource.HEADER + 16).order(ByteOrder.LITTLE_ENDIAN);
+		header.putLong(0, 0x3000000000000000L);
+		Files.write(file, header.array());
+
+		assertThrows(IOException.class, () -> new MappedPieceSource(file));
+	}
+
+	@Test
+	void rejectsATruncatedFile() throws IOException {
+		Path file = dir.resolve("pieces");
+		MappedPieceSource.write(file, new int[] {0, 1, 2, 3, 4, 5, 6, 0});
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+
+		assertThrows(IOException.class, () -> new MappedPieceSource(file));
+	}
+}
@@ -0,0 +1,44 @@
+package tetris;
+
+import java.util.SplittableRandom;
+
+/**
+ * A source of pieces using the 7-bag randomizer: the pieces
+ * come in bags of one of each of the 7 pieces, shuffled.
+ */
+public class BagPieceSource implements PieceSource {
+
+	/**
+	 * The random number generator.
+	 */
+	SplittableRandom rnd;
+	/**
+	 * The current bag, and how many of its pieces
+	 * have been handed out.
+	 */
+	int[] bag = {0, 1, 2, 3, 4, 5, 6};
+	int used;
+
+	/**
+	 * Constructor
+	 * @param seed the seed of the random number generator
+	 */
+	public BagPieceSource(long seed) {
+		this.rnd = new SplittableRandom(seed);
+		this.used = bag.length;
+	}
+
+	public int next() {
+		//once the bag is empty, refill it in a new order
+		if( used == bag.length ) {
+			for(int i=bag.length-1; i>0; i--) {
+				int j = rnd.nextInt(i+1);
+				int temp = bag[i];
+				bag[i] = bag[j];
+				bag[j] = temp;
+			}
+			used = 0;
+		}
+		return bag[used++];
+	}
+}
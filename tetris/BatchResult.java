@@ -0,0 +1,142 @@
+package tetris;
+
+/**
+ * A class to hold the results of a batch of simulated
+ * games played with the same AI constants.
+ *
+ * The games are kept in the order they were started in,
+ * and every total is summed in that order, so the pieces
+ * and lines of a batch only depend on its seed and never
+ * on how many threads played it. Only the timings vary, unless
+ * the batch had a wall clock budget (see TetrisBatch.setBudget).
+ *
+ * A batch stopped early (see TetrisBatch.setEarlyStop) holds the
+ * games up to where it stopped, in order.
+ */
+public class BatchResult {
+
+	/**
+	 * The AI constants the games were played with.
+	 */
+	public final double[] constants;
+	/**
+	 * The result of each game, in order.
+	 */
+	public final GameResult[] games;
+	/**
+	 * The total pieces and lines over every game.
+	 */
+	public final long pieces;
+	public final long lines;
+	/**
+	 * The number of games stopped before they ended
+	 * (see GameResult.censored).
+	 */
+	public final int censored;
+	/**
+	 * The total time spent playing games, summed over
+	 * every game, and the wall clock time of the batch,
+	 * in nanoseconds.
+	 */
+	public final long gameNanos;
+	public final long wallNanos;
+
+	/**
+	 * Constructor. Totals the games.
+	 * @param constants the AI constants
+	 * @param games the results of the games, in order
+	 * @param wallNanos the wall clock time of the batch
+	 */
+	public BatchResult(double[] constants, GameResult[] games, long wallNanos) {
+		this.constants = constants;
+		this.games = games;
+		this.wallNanos = wallNanos;
+		
+		long pieces = 0, lines = 0, gameNanos = 0;
+		int censored = 0;
+		for(GameResult game: games) {
+			pieces += game.pieces;
+			lines += game.lines;
+			gameNanos += game.nanos;
+			if( game.censored ) {
+				censored++;
+			}
+		}
+		this.censored = censored;
+		this.pieces = pieces;
+		this.lines = lines;
+		this.gameNanos = gameNanos;
+	}
+
+	/**
+	 * The mean number of pieces played per game.
+	 * @return the mean game length
+	 */
+	public double meanPieces() {
+		return games.length == 0 ? 0 : (double) pieces / games.length;
+	}
+
+	/**
+	 * The mean number of pieces played per game over the first
+	 * games, to compare with batches stopped early elsewhere.
+	 * @param count the number of games, at most the number played
+	 * @return the mean length of the first games
+	 */
+	public double meanPieces(int count) {
+		long pieces = 0;
+		for(int i=0; i<count; i++) {
+			pieces += games[i].pieces;
+		}
+		return count == 0 ? 0 : (double) pieces / count;
+	}
+
+	/**
+	 * The half width of the confidence interval of the mean
+	 * number of pieces per game: the given number of standard
+	 * errors of the mean (1.96 for 95%). Censored games count
+	 * the pieces they played, so this is for a lower bound on
+	 * the mean if any games were censored.
+	 * @param z the number of standard errors
+	 * @return the half width, or infinity with fewer than two games
+	 */
+	public double confidence(double z) {
+		if( games.length < 2 ) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double mean = meanPieces();
+		double squares = 0;
+		for(GameResult game: games) {
+			squares += (game.pieces - mean) * (game.pieces - mean);
+		}
+		return z * Math.sqrt(squares / (games.length - 1) / games.length);
+	}
+
+	/**
+	 * The number of games played per second of wall clock time.
+	 * @return the game throughput
+	 */
+	public double gamesPerSecond() {
+		return wallNanos == 0 ? 0 : games.length * 1e9 / wallNanos;
+	}
+
+	/**
+	 * The number of pieces played per second of wall clock time.
+	 * @return the piece throughput
+	 */
+	public double piecesPerSecond() {
+		return wallNanos == 0 ? 0 : pieces * 1e9 / wallNanos;
+	}
+
+	/**
+	 * A toString for the batch.
+	 */
+	public String toString() {
+		String output = "";
+		output += "games: " + games.length + (censored > 0 ? " (" + censored + " censored)" : "") + "\n";
+		output += "pieces: " + pieces + " (mean " + meanPieces() + ")\n";
+		output += "lines: " + lines + "\n";
+		output += "games/sec: " + gamesPerSecond() + "\n";
+		output += "pieces/sec: " + piecesPerSecond();
+		return output;
+	}
+}
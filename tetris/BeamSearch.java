@@ -0,0 +1,307 @@
+package tetris;
+
+import java.awt.Point;
+import java.util.Arrays;
+
+/**
+ * A beam search over the current piece and the preview pieces
+ * after it.
+ *
+ * Every move of the current piece is placed on a copy of the
+ * board, and the lines it makes are cleared. Each of the boards
+ * this gives is a node, scored by the score of its move (as in
+ * Tetris.makeMove). The best nodes, up to the beam width, are
+ * kept, and every move of the next piece is tried on each of
+ * them, adding its score to the score of the node. This goes on
+ * for one more piece than the preview, or until the time budget
+ * runs out, and the first move of the best node is made.
+ *
+ * Different moves often leave the same board, so the nodes of
+ * each piece go through a transposition table keyed by the
+ * Zobrist hash of their board, and only the best node for a
+ * board is kept.
+ *
+ * The boards of the nodes are made once and reused, so a search
+ * only copies boards and doesn't create them. A search is used
+ * by one game at a time.
+ */
+public class BeamSearch {
+
+	/**
+	 * The most pieces to look at, counting the current one.
+	 */
+	public int DEPTH;
+	/**
+	 * The most nodes kept after each piece.
+	 */
+	public int BEAM_WIDTH;
+	/**
+	 * How long a search may take in nanoseconds, or 0 for
+	 * no limit. The moves of the current piece are always
+	 * all tried, even if they take longer.
+	 */
+	public long BUDGET_NANOS;
+
+	/**
+	 * A board reached by the search, with the total score of
+	 * the moves to reach it and the first of those moves.
+	 */
+	static class Node {
+		Board board;
+		double score;
+		int x;
+		int y;
+		int rotation;
+	}
+
+	/**
+	 * The nodes kept after the last piece, best first, and
+	 * the nodes found for the next piece.
+	 */
+	Node[] beam;
+	int beamSize;
+	Node[] children;
+	int childCount;
+	/**
+	 * The transposition table, open addressing with linear
+	 * probing: the hash of each slot's board and the index of
+	 * its child. A slot is only in use if its stamp is the
+	 * current stamp, so the table is emptied for each piece
+	 * by changing the stamp.
+	 */
+	long[] tableHashes;
+	int[] tableChildren;
+	int[] tableStamps;
+	int stamp;
+	/**
+	 * The piece used to place moves on the boards of the nodes.
+	 */
+	Piece placer;
+	/**
+	 * The number of boards that were already in the
+	 * transposition table, over every search.
+	 */
+	long transpositions;
+
+	/**
+	 * A constructor for the class.
+	 * @param depth the most pieces to look at, counting the current one
+	 * @param beamWidth the most nodes kept after each piece
+	 * @param budgetNanos how long a search may take in nanoseconds, or 0 for no limit
+	 */
+	public BeamSearch(int depth, int beamWidth, long budgetNanos) {
+		if( depth < 1 || beamWidth < 1 ) {
+			throw new IllegalArgumentException("depth and beam width must be positive: " + depth + ", " + beamWidth);
+		}
+		this.DEPTH = depth;
+		this.BEAM_WIDTH = beamWidth;
+		this.BUDGET_NANOS = budgetNanos;
+	}
+
+	/**
+	 * Find the best move of the current piece of a game. The
+	 * game's board is not changed.
+	 * @param game the game to search
+	 * @param type the type of the current piece
+	 * @param preview the types of the pieces after it, in order
+	 * @param count how many of the preview pieces are known
+	 * @return the column of the center, the rotation and the row
+	 * the center lands on of the best move, or null if the piece
+	 * has no move
+	 */
+	public int[] search(Tetris game, int type, int[] preview, int count) {
+		long start = System.nanoTime();
+		allocate(game);
+
+		//start from the board of the game
+		beam[0].board.copyFrom(game.board);
+		beam[0].score = 0;
+		beamSize = 1;
+
+		int depth = Math.min(DEPTH, count + 1);
+		for(int d=0; d<depth; d++) {
+			int pieceType = d == 0 ? type : preview[d-1];
+
+			//stop if we are out of time, keeping the last beam.
+			//every move of the current piece is always tried
+			if( !expand(game, pieceType, d == 0, start) ) {
+				break;
+			}
+			if( childCount == 0 ) {
+				//every node tops out with this piece
+				if( d == 0 ) {
+					return null;
+				}
+				break;
+			}
+			keepBest();
+		}
+
+		//the beam is sorted, so the first node is the best
+		int[] best = { beam[0].x, beam[0].rotation, beam[0].y };
+		return best;
+	}
+
+	/**
+	 * Make the nodes and the transposition table for the
+	 * boards of the given game, if not made already. Each
+	 * board has at most a move per column and rotation, or
+	 * with tucks, one per column, row and rotation (see
+	 * Reachability).
+	 * @param game the game to search
+	 */
+	void allocate(Tetris game) {
+		Board board = game.board;
+		int moves = 4 * board.width;
+		if( game.reachability != null ) {
+			moves *= board.height;
+		}
+		int maxChildren = BEAM_WIDTH * moves;
+		if( children != null && children.length == maxChildren && beam.length == BEAM_WIDTH
+				&& beam[0].board.width == board.width && beam[0].board.height == board.height ) {
+			return;
+		}
+
+		beam = nodes(BEAM_WIDTH, board);
+		children = nodes(maxChildren, board);
+
+		//keep the table at most half full
+		int size = Integer.highestOneBit(maxChildren) * 4;
+		tableHashes = new long[size];
+		tableChildren = new int[size];
+		tableStamps = new int[size];
+		stamp = 0;
+
+		placer = new Piece(0, new Point());
+	}
+
+	/**
+	 * Make an array of nodes with boards like the given board.
+	 * @param n the number of nodes
+	 * @param board the board to copy the size of
+	 * @return the nodes
+	 */
+	static Node[] nodes(int n, Board board) {
+		Node[] nodes = new Node[n];
+		for(int i=0; i<n; i++) {
+			nodes[i] = new Node();
+			nodes[i].board = new Board(board.width, board.height);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Try every move of a piece on the board of every node in
+	 * the beam, and collect the new boards as children.
+	 * @param game the game being searched, which scores the moves
+	 * @param type the type of the piece
+	 * @param first whether this is the current piece
+	 * @param start when the search started, from System.nanoTime
+	 * @return false if the time ran out before every node was expanded
+	 */
+	boolean expand(Tetris game, int type, boolean first, long start) {
+		childCount = 0;
+		//empty the table
+		if( ++stamp == 0 ) {
+			Arrays.fill(tableStamps, 0);
+			stamp = 1;
+		}
+
+		for(int b=0; b<beamSize; b++) {
+			if( !first && BUDGET_NANOS > 0 && System.nanoTime() - start > BUDGET_NANOS ) {
+				return false;
+			}
+			Node node = beam[b];
+
+			//score every move of the piece, which the game
+			//leaves in its move arrays
+			int moves = game.findMoves(node.board, type);
+			for(int m=0; m<moves; m++) {
+				int x = game.moveX[m];
+				int y = game.moveY[m];
+				int rotation = game.moveRotations[m];
+				double score = node.score + game.moveScores[m];
+
+				//make the move on a new child, where it lands
+				Node child = children[childCount];
+				child.board.copyFrom(node.board);
+				placer.reset(type, x, y);
+				placer.rotateTo(rotation);
+				placer.add(child.board);
+				child.board.removeFullRows(placer.center.y + placer.shape.minY,
+						placer.center.y + placer.shape.maxY);
+				child.score = score;
+				child.x = first ? x : node.x;
+				child.y = first ? y : node.y;
+				child.rotation = first ? rotation : node.rotation;
+
+				//keep only the best way to reach each board
+				int slot = find(child.board.hash());
+				if( tableStamps[slot] == stamp ) {
+					transpositions++;
+					Node other = children[tableChildren[slot]];
+					if( score > other.score ) {
+						//the boards are the same, so only the score and move change
+						other.score = score;
+						other.x = child.x;
+						other.y = child.y;
+						other.rotation = child.rotation;
+					}
+					continue;
+				}
+				tableStamps[slot] = stamp;
+				tableChildren[slot] = childCount;
+				childCount++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find the slot of the transposition table for a hash: the
+	 * slot holding it, or the empty slot where it would go. The
+	 * hash is stored in the slot.
+	 * @param hash the hash of a board
+	 * @return the slot
+	 */
+	int find(long hash) {
+		int mask = tableHashes.length - 1;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while( tableStamps[slot] == stamp && tableHashes[slot] != hash ) {
+			slot = (slot + 1) & mask;
+		}
+		tableHashes[slot] = hash;
+		return slot;
+	}
+
+	/**
+	 * Keep the best children, up to the beam width, as the
+	 * new beam, best first.
+	 */
+	void keepBest() {
+		beamSize = Math.min(BEAM_WIDTH, childCount);
+
+		//pick the best child left, beamSize times. the beam is
+		//small next to the children, so this is cheaper than sorting
+		for(int b=0; b<beamSize; b++) {
+			int best = b;
+			for(int c=b+1; c<childCount; c++) {
+				if( children[c].score > children[best].score ) {
+					best = c;
+				}
+			}
+
+			//swap it into place, then copy it to the beam
+			Node child = children[best];
+			children[best] = children[b];
+			children[b] = child;
+
+			Node node = beam[b];
+			node.board.copyFrom(child.board);
+			node.score = child.score;
+			node.x = child.x;
+			node.y = child.y;
+			node.rotation = child.rotation;
+		}
+	}
+}
@@ -0,0 +1,395 @@
+package tetris;
+
+/**
+ * A class for a packed Tetris board. Each row of the board is
+ * stored as a bitmask in one or more longs (words), where bit x
+ * of a row is set if column x of that row has a block. Rows up
+ * to 64 wide take one word, and wider rows take one word per 64
+ * columns, so the cost of a row grows with the width of the
+ * board.
+ *
+ * This lets collision checks, full line detection and line
+ * clearing work on a whole row at a time instead of cell by cell.
+ *
+ * The board also keeps the height of each column and the number
+ * of holes (empty squares under the highest block) in it. These
+ * are updated as pieces are added and rows are removed, so they
+ * never have to be found by scanning the board.
+ */
+public class Board {
+
+	/**
+	 * The width and height of the board.
+	 */
+	int width;
+	int height;
+	/**
+	 * The number of words in each row.
+	 */
+	int words;
+	/**
+	 * The rows of the board, from the bottom (row 0) up: word w
+	 * of row y, holding columns 64w to 64w+63, is rows[y*words + w].
+	 */
+	long[] rows;
+	/**
+	 * The bitmask of the last word of a row with every column
+	 * filled. The other words of a full row are all ones.
+	 */
+	long fullRow;
+	/**
+	 * The height of each column: one more than the row of
+	 * its highest block, or 0 if the column is empty.
+	 */
+	int[] heights;
+	/**
+	 * The number of empty squares below the highest block
+	 * of each column.
+	 */
+	int[] holes;
+	/**
+	 * The height of the highest column.
+	 */
+	int maxHeight;
+	/**
+	 * Scratch space for removeFullRows: a bit for each column.
+	 */
+	long[] columnBits;
+
+	/**
+	 * A constructor for the class. Creates an
+	 * empty board of the given size.
+	 * @param width the number of columns
+	 * @param height the number of rows
+	 */
+	public Board(int width, int height) {
+		if( width < 1 || height < 1 ) {
+			throw new IllegalArgumentException("board must be at least 1x1: " + width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+		this.words = (width + 63) >>> 6;
+		this.rows = new long[height * words];
+		this.fullRow = -1L >>> (words*64 - width);
+		this.heights = new int[width];
+		this.holes = new int[width];
+		this.maxHeight = 0;
+		this.columnBits = new long[words];
+	}
+
+	/**
+	 * Empty the board.
+	 */
+	public void clear() {
+		for(int i=0; i<rows.length; i++) {
+			rows[i]=0;
+		}
+		recount();
+	}
+
+	/**
+	 * Make this board a copy of another board of the same size.
+	 * @param other the board to copy
+	 */
+	public void copyFrom(Board other) {
+		System.arraycopy(other.rows, 0, rows, 0, rows.length);
+		System.arraycopy(other.heights, 0, heights, 0, heights.length);
+		System.arraycopy(other.holes, 0, holes, 0, holes.length);
+		maxHeight = other.maxHeight;
+	}
+
+	/**
+	 * A hash of the blocks of the board. Each word of each row
+	 * that has a block is mixed with a key for its position, and
+	 * the results are xor'ed together, so the cost grows with the
+	 * filled part of the board. Boards with the same blocks have
+	 * the same hash (whatever their size), and different boards
+	 * almost never do. The hash is the same every run, so hashes
+	 * can be compared between runs.
+	 * @return the hash of the board
+	 */
+	public long hash() {
+		long hash = 0;
+		//nothing is above the highest column
+		for(int y=0; y<maxHeight; y++) {
+			for(int w=0; w<words; w++) {
+				long bits = rows[y*words + w];
+				if( bits != 0 ) {
+					hash ^= mix(bits ^ (y * 0x9E3779B97F4A7C15L + w * 0xD6E8FEB86659FD93L + 0x5DEECE66DL));
+				}
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Scramble the bits of a long (the finalizer of SplitMix64).
+	 * Different inputs always give different outputs.
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Work out the column heights and holes from scratch.
+	 * Only needed when the rows have been changed directly.
+	 */
+	public void recount() {
+		maxHeight = 0;
+		for(int x=0; x<width; x++) {
+			//find the highest block
+			int h = height;
+			while( h > 0 && !isFilled(x, h-1) ) {
+				h--;
+			}
+			heights[x] = h;
+			
+			//count the empty squares under it
+			holes[x] = 0;
+			for(int y=0; y<h; y++) {
+				if( !isFilled(x, y) ) {
+					holes[x]++;
+				}
+			}
+			maxHeight = Math.max(maxHeight, h);
+		}
+	}
+
+	/**
+	 * Whether or not the given square has a block. The
+	 * square must be on the board.
+	 * @param x the column
+	 * @param y the row
+	 * @return true if the square has a block
+	 */
+	public boolean isFilled(int x, int y) {
+		return (rows[y*words + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Put a block in the given square. The square must be
+	 * on the board.
+	 * @param x the column
+	 * @param y the row
+	 */
+	public void fill(int x, int y) {
+		if( isFilled(x, y) ) {
+			return;
+		}
+		rows[y*words + (x >>> 6)] |= 1L << x;
+		
+		//update the column
+		if( y >= heights[x] ) {
+			holes[x] += y - heights[x];
+			heights[x] = y+1;
+			maxHeight = Math.max(maxHeight, heights[x]);
+		} else {
+			holes[x]--;
+		}
+	}
+
+	/**
+	 * Whether or not the given row has every column filled.
+	 * @param y the row
+	 * @return true if the row is full
+	 */
+	public boolean isFull(int y) {
+		int last = y*words + words - 1;
+		for(int i=y*words; i<last; i++) {
+			if( rows[i] != -1L ) {
+				return false;
+			}
+		}
+		return rows[last] == fullRow;
+	}
+
+	/**
+	 * Whether or not the given row would have every column
+	 * filled with a row mask of a piece added to it. The mask
+	 * is shifted left by shift, as in collides.
+	 * @param mask the row mask
+	 * @param shift the column of bit 0 of the mask
+	 * @param y the row
+	 * @return true if the row would be full
+	 */
+	public boolean isFullWith(int mask, int shift, int y) {
+		if( words == 1 ) {
+			return (rows[y] | ((long) mask << shift)) == fullRow;
+		}
+		//the mask can run over into the next word
+		int word = shift >>> 6;
+		int bit = shift & 63;
+		long low = (long) mask << bit;
+		long high = bit == 0 ? 0 : (long) mask >>> (64 - bit);
+		int base = y*words;
+		for(int w=0; w<words; w++) {
+			long bits = rows[base + w];
+			if( w == word ) {
+				bits |= low;
+			} else if( w == word + 1 ) {
+				bits |= high;
+			}
+			if( bits != (w == words-1 ? fullRow : -1L) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether or not a piece given as row masks overlaps
+	 * any block on the board. Mask k is shifted left by
+	 * shift and tested against row bottom + k. Every
+	 * tested row must be on the board.
+	 * @param masks the row masks of the piece, from its lowest row up
+	 * @param shift the column of bit 0 of the masks
+	 * @param bottom the row of the first mask
+	 * @return true if the piece collides with the board
+	 */
+	public boolean collides(int[] masks, int shift, int bottom) {
+		int index = bottom*words + (shift >>> 6);
+		int bit = shift & 63;
+		for(int k=0; k<masks.length; k++, index+=words) {
+			if( (rows[index] & ((long) masks[k] << bit)) != 0 ) {
+				return true;
+			}
+			//the part of the mask that runs over into the next word
+			long high = bit == 0 ? 0 : (long) masks[k] >>> (64 - bit);
+			if( high != 0 && (rows[index+1] & high) != 0 ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Add a piece given as row masks to the board. The masks
+	 * are laid out as in collides, and the piece must not
+	 * collide with the board.
+	 * @param masks the row masks of the piece, from its lowest row up
+	 * @param shift the column of bit 0 of the masks
+	 * @param bottom the row of the first mask
+	 */
+	public void add(int[] masks, int shift, int bottom) {
+		int word = shift >>> 6;
+		int bit = shift & 63;
+		for(int k=0; k<masks.length; k++) {
+			int y = bottom+k;
+			addBits(y, word, (long) masks[k] << bit);
+			if( bit != 0 ) {
+				long high = (long) masks[k] >>> (64 - bit);
+				if( high != 0 ) {
+					addBits(y, word+1, high);
+				}
+			}
+			maxHeight = Math.max(maxHeight, y+1);
+		}
+	}
+
+	/**
+	 * Add blocks to a word of a row, and update their columns.
+	 * @param y the row
+	 * @param word the word of the row
+	 * @param bits the blocks
+	 */
+	void addBits(int y, int word, long bits) {
+		rows[y*words + word] |= bits;
+		
+		//update the column of each new block, from the bottom up
+		while( bits != 0 ) {
+			int x = (word << 6) + Long.numberOfTrailingZeros(bits);
+			bits &= bits-1;
+			
+			if( y >= heights[x] ) {
+				//the block is on top of the column
+				holes[x] += y - heights[x];
+				heights[x] = y+1;
+			} else {
+				//the block fills a hole
+				holes[x]--;
+			}
+		}
+	}
+
+	/**
+	 * Remove every full row between two rows (inclusive) and move
+	 * the rows above them down, in a single pass over the board.
+	 * The rows left at the top become empty.
+	 * 
+	 * Only rows that a piece was just added to can have become
+	 * full, so callers pass the rows of that piece.
+	 * @param from the lowest row to check
+	 * @param to the highest row to check
+	 * @return the number of rows removed
+	 */
+	public int removeFullRows(int from, int to) {
+		from = Math.max(from, 0);
+		to = Math.min(to, height-1);
+		
+		//count the full rows
+		int removed = 0;
+		for(int y=from; y<=to; y++) {
+			if( isFull(y) ) {
+				removed++;
+			}
+		}
+		if( removed == 0 ) {
+			return 0;
+		}
+		
+		//note the columns whose highest block is in a full row
+		long[] topRemoved = columnBits;
+		for(int w=0; w<words; w++) {
+			topRemoved[w] = 0;
+		}
+		for(int x=0; x<width; x++) {
+			int top = heights[x] - 1;
+			if( top >= from && top <= to && isFull(top) ) {
+				topRemoved[x >>> 6] |= 1L << x;
+			}
+		}
+		
+		//move each row that is kept down to the next free row.
+		//rows are only written below where they are read, so
+		//each row is still as it was when it is checked
+		int write = from;
+		for(int y=from; y<height; y++) {
+			if( y <= to && isFull(y) ) {
+				continue;
+			}
+			if( words == 1 ) {
+				rows[write] = rows[y];
+			} else {
+				System.arraycopy(rows, y*words, rows, write*words, words);
+			}
+			write++;
+		}
+		for(int i=write*words; i<rows.length; i++) {
+			rows[i] = 0;
+		}
+		
+		//correct the columns. every column reached the removed rows,
+		//since they were full, and lost a block (not a hole) in each.
+		maxHeight = 0;
+		for(int x=0; x<width; x++) {
+			int h = heights[x] - removed;
+			if( (topRemoved[x >>> 6] & (1L << x)) != 0 ) {
+				//removed the highest block, so the column now ends
+				//at the next block down, and the holes above it
+				//are not holes any more
+				int newHeight = h;
+				while( newHeight > 0 && !isFilled(x, newHeight-1) ) {
+					newHeight--;
+				}
+				holes[x] -= h - newHeight;
+				h = newHeight;
+			}
+			heights[x] = h;
+			maxHeight = Math.max(maxHeight, h);
+		}
+		
+		return removed;
+	}
+}
@@ -0,0 +1,58 @@
+package tetris;
+
+/**
+ * The candidate moves of a piece, laid out as a struct of arrays:
+ * one array for the column of each move, one for its rotation, one
+ * for its score, and one for each feature (see Evaluator), with a
+ * lane in each for every move. Evaluator.score scores every lane at
+ * once from these, a feature at a time.
+ */
+public class Candidates {
+
+	/**
+	 * The number of moves.
+	 */
+	int count;
+	/**
+	 * The column and row of the center, and the rotation,
+	 * of each move, where the piece lands.
+	 */
+	final int[] x;
+	final int[] y;
+	final int[] rotation;
+	/**
+	 * The score of each move, once it has been scored.
+	 */
+	final double[] score;
+	/**
+	 * The features of each move, indexed by feature
+	 * and then by move.
+	 */
+	final double[][] features;
+
+	/**
+	 * A constructor for the class.
+	 * @param capacity the most moves it can hold
+	 */
+	public Candidates(int capacity) {
+		x = new int[capacity];
+		y = new int[capacity];
+		rotation = new int[capacity];
+		score = new double[capacity];
+		features = new double[Evaluator.FEATURES][capacity];
+	}
+
+	/**
+	 * The number of moves.
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * The most moves it can hold.
+	 */
+	public int capacity() {
+		return x.length;
+	}
+}
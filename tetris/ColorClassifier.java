@@ -0,0 +1,113 @@
+package tetris;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * A class to tell which piece a screen color belongs to, in
+ * constant time and with some tolerance for colors that are a
+ * little off (from anti-aliasing, or a slightly different theme).
+ *
+ * Colors are quantized to BITS bits per channel, and a table gives
+ * the piece for each quantized color. The table is built once from
+ * the palette: each quantized color goes to the nearest piece color,
+ * if that is within the tolerance in every channel, and to no piece
+ * otherwise. Distances are taken from the middle of the quantized
+ * color, so a color can be up to half a step further off than the
+ * tolerance and still be matched.
+ */
+public class ColorClassifier {
+
+	/**
+	 * The bits kept of each channel.
+	 */
+	final static int BITS = 6;
+	/**
+	 * The size of each step of a quantized channel.
+	 */
+	final static int STEP = 1 << (8 - BITS);
+
+	/**
+	 * The piece of each quantized color, or -1 for none.
+	 */
+	final byte[] table;
+	/**
+	 * The most each channel can be off by, and still match.
+	 */
+	final int tolerance;
+	/**
+	 * The number of pieces in the palette.
+	 */
+	final int colors;
+
+	/**
+	 * A constructor for the class.
+	 * @param palette the color of each piece
+	 * @param tolerance the most each channel can be off by, and still match
+	 */
+	public ColorClassifier(Color[] palette, int tolerance) {
+		this.tolerance = tolerance;
+		this.colors = palette.length;
+		this.table = new byte[1 << (3*BITS)];
+
+		int levels = 1 << BITS;
+		for(int r=0; r<levels; r++) {
+			for(int g=0; g<levels; g++) {
+				for(int b=0; b<levels; b++) {
+					//the middle of the quantized color
+					int red = r*STEP + STEP/2;
+					int green = g*STEP + STEP/2;
+					int blue = b*STEP + STEP/2;
+
+					//find the nearest piece color
+					int piece = -1;
+					int best = Integer.MAX_VALUE;
+					for(int i=0; i<palette.length; i++) {
+						int distance = Math.max(Math.abs(palette[i].getRed() - red),
+								Math.max(Math.abs(palette[i].getGreen() - green), Math.abs(palette[i].getBlue() - blue)));
+						if( distance < best ) {
+							best = distance;
+							piece = i;
+						}
+					}
+
+					table[(r << (2*BITS)) | (g << BITS) | b] = (byte) (best <= tolerance + STEP/2 ? piece : -1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find the piece of a color.
+	 * @param rgb the color, packed as 0xRRGGBB
+	 * @return the piece, or -1 if the color isn't near any piece color
+	 */
+	public int classify(int rgb) {
+		int r = (rgb >> (16 + 8 - BITS)) & ((1 << BITS) - 1);
+		int g = (rgb >> (8 + 8 - BITS)) & ((1 << BITS) - 1);
+		int b = (rgb >> (8 - BITS)) & ((1 << BITS) - 1);
+		return table[(r << (2*BITS)) | (g << BITS) | b];
+	}
+
+	/**
+	 * Find the piece most of the given colors belong to, such as
+	 * the colors of a few pixels of the same block. The piece has
+	 * to have the most votes and more than half of them, so a few
+	 * stray pixels don't decide it.
+	 * @param rgbs the colors, packed as 0xRRGGBB
+	 * @param count the number of colors to use
+	 * @param votes scratch space for the votes, one per piece
+	 * @return the piece, or -1 if there is no majority
+	 */
+	public int vote(int[] rgbs, int count, int[] votes) {
+		Arrays.fill(votes, 0, colors, 0);
+		int piece = -1;
+		for(int i=0; i<count; i++) {
+			int p = classify(rgbs[i]);
+			if( p >= 0 && ++votes[p] > count / 2 ) {
+				piece = p;
+			}
+		}
+		return piece;
+	}
+}
@@ -0,0 +1,327 @@
+package tetris;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the moves chosen by Tetris.makeMove, shared
+ * by every game playing with the same AI constants (TetrisBatch
+ * keeps one for each set of constants it is playing).
+ *
+ * The greedy move only depends on the board, the type of the
+ * piece and the AI constants, so games that reach the same board
+ * (such as the first few pieces of every game, or an empty board
+ * after clearing everything) can reuse it. Entries are keyed by
+ * the Zobrist hash of the board and the piece type, and hold a
+ * copy of the rows of the board so a hash that matches for a
+ * different board is never used.
+ *
+ * The cache is split into sets of WAYS entries, and a board can
+ * only go in the set its hash picks. When a set is full, an entry
+ * is evicted with the CLOCK algorithm: entries are marked when
+ * they are used, and the clock hand of the set passes over (and
+ * unmarks) marked entries until it finds one that isn't. Each set
+ * is guarded by one of a number of locks, so games on different
+ * threads rarely wait on each other.
+ *
+ * A cache is for one size of board: the same rows can be a
+ * different board (and a different best move) on a board of
+ * another width or height, so games only share a cache if their
+ * boards are the same size (see isFor).
+ */
+public class DecisionCache {
+
+	/**
+	 * The number of entries in each set.
+	 */
+	final static int WAYS = 4;
+	/**
+	 * Returned by get when the board isn't in the cache.
+	 */
+	public final static int MISS = Integer.MIN_VALUE;
+	/**
+	 * Stored for a board where the piece has no move,
+	 * and the game is over.
+	 */
+	public final static int NO_MOVE = -1;
+	/**
+	 * A random key for each piece type, xor'ed into
+	 * the hash of the board.
+	 */
+	final static long[] TYPE_KEYS = { 0x9E3779B97F4A7C15L, 0xBF58476D1CE4E5B9L,
+		0x94D049BB133111EBL, 0x2545F4914F6CDD1DL, 0xD6E8FEB86659FD93L,
+		0xA0761D6478BD642FL, 0xE7037ED1A0B428DBL };
+
+	/**
+	 * The AI constants the moves were chosen with.
+	 */
+	final double[] constants;
+	/**
+	 * The size of the boards the moves were chosen on: the
+	 * number of columns, the rows of the board, and the rows
+	 * the game is played in.
+	 */
+	final int width;
+	final int height;
+	final int visibleRows;
+	/**
+	 * The number of sets, a power of two.
+	 */
+	final int sets;
+	/**
+	 * The entries, WAYS per set: the key of each, the rows
+	 * of its board (null if the entry is empty), its piece
+	 * type, its move, and whether it has been used since the
+	 * clock hand last passed it.
+	 */
+	final long[] keys;
+	final long[][] boards;
+	final byte[] types;
+	final int[] moves;
+	final boolean[] used;
+	/**
+	 * The clock hand of each set.
+	 */
+	final byte[] hands;
+	/**
+	 * The locks, each guarding every set with the
+	 * same index modulo the number of locks.
+	 */
+	final Object[] locks;
+	/**
+	 * How often a board was found in the cache or
+	 * not, and how many entries have been evicted.
+	 */
+	final LongAdder hits = new LongAdder();
+	final LongAdder misses = new LongAdder();
+	final LongAdder evictions = new LongAdder();
+
+	/**
+	 * A constructor for a cache of moves on the default board.
+	 * @param constants the AI constants the moves are chosen with
+	 * @param capacity the most moves to keep, rounded up to a power of two
+	 */
+	public DecisionCache(double[] constants, int capacity) {
+		this(constants, Tetris.BOARD_DIMENSIONS.width, Tetris.BOARD_DIMENSIONS.height - Tetris.VERTICAL_BUFFER, capacity);
+	}
+
+	/**
+	 * A constructor for a cache of moves on a board of any size.
+	 * @param constants the AI constants the moves are chosen with
+	 * @param width the number of columns of the board
+	 * @param rows the number of rows the game is played in
+	 * @param capacity the most moves to keep, rounded up to a power of two
+	 */
+	public DecisionCache(double[] constants, int width, int rows, int capacity) {
+		if( capacity < 1 ) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.constants = constants.clone();
+		this.width = width;
+		this.height = rows + Tetris.VERTICAL_BUFFER;
+		this.visibleRows = rows;
+		this.sets = Math.max(1, Integer.highestOneBit(capacity - 1) * 2 / WAYS);
+
+		int entries = sets * WAYS;
+		this.keys = new long[entries];
+		this.boards = new long[entries][];
+		this.types = new byte[entries];
+		this.moves = new int[entries];
+		this.used = new boolean[entries];
+		this.hands = new byte[sets];
+
+		//a few locks per core, so two threads rarely want the same one
+		int stripes = Math.min(sets, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 8 - 1) * 2);
+		this.locks = new Object[stripes];
+		for(int i=0; i<stripes; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Pack a move into an int, to store in the cache.
+	 * @param x the column of the center of the piece
+	 * @param rotation the rotation of the piece
+	 * @return the move
+	 */
+	public static int move(int x, int rotation) {
+		return x << 2 | rotation;
+	}
+
+	/**
+	 * The column of the center of a packed move.
+	 */
+	public static int moveX(int move) {
+		return move >> 2;
+	}
+
+	/**
+	 * The rotation of a packed move.
+	 */
+	public static int moveRotation(int move) {
+		return move & 3;
+	}
+
+	/**
+	 * The key of a board and piece.
+	 */
+	static long key(Board board, int type) {
+		return board.hash() ^ TYPE_KEYS[type];
+	}
+
+	/**
+	 * The set a key goes in.
+	 */
+	int set(long key) {
+		return (int) (key ^ (key >>> 32)) & (sets - 1);
+	}
+
+	/**
+	 * Whether or not an entry holds the given board and piece.
+	 */
+	boolean matches(int entry, long key, Board board, int type) {
+		long[] rows = boards[entry];
+		if( rows == null || keys[entry] != key || types[entry] != type || rows.length != board.maxHeight*board.words ) {
+			return false;
+		}
+		for(int i=0; i<rows.length; i++) {
+			if( rows[i] != board.rows[i] ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the move stored for a board and piece.
+	 * @param board the board
+	 * @param type the type of the piece
+	 * @return the packed move, NO_MOVE if the piece had no
+	 * move, or MISS if the board isn't in the cache
+	 */
+	public int get(Board board, int type) {
+		long key = key(board, type);
+		int set = set(key);
+		synchronized(locks[set & (locks.length - 1)]) {
+			for(int entry=set*WAYS; entry<set*WAYS+WAYS; entry++) {
+				if( matches(entry, key, board, type) ) {
+					used[entry] = true;
+					hits.increment();
+					Metrics.count(Metrics.Counter.CACHE_HITS, 1);
+					return moves[entry];
+				}
+			}
+		}
+		misses.increment();
+		return MISS;
+	}
+
+	/**
+	 * Store the move chosen for a board and piece, evicting
+	 * another entry of its set if the set is full.
+	 * @param board the board
+	 * @param type the type of the piece
+	 * @param move the packed move, or NO_MOVE
+	 */
+	public void put(Board board, int type, int move) {
+		long key = key(board, type);
+		int set = set(key);
+		int first = set*WAYS;
+
+		//copy the board outside the lock
+		long[] rows = Arrays.copyOf(board.rows, board.maxHeight*board.words);
+
+		synchronized(locks[set & (locks.length - 1)]) {
+			//use the entry for this board if another game stored it
+			//first, or else an empty entry
+			int entry = -1;
+			for(int e=first; e<first+WAYS; e++) {
+				if( matches(e, key, board, type) ) {
+					entry = e;
+					break;
+				}
+				if( entry == -1 && boards[e] == null ) {
+					entry = e;
+				}
+			}
+
+			//otherwise, run the clock hand to the first entry not used
+			//since it last came by
+			if( entry == -1 ) {
+				int hand = hands[set];
+				while( used[first + hand] ) {
+					used[first + hand] = false;
+					hand = (hand + 1) % WAYS;
+				}
+				entry = first + hand;
+				hands[set] = (byte) ((hand + 1) % WAYS);
+				evictions.increment();
+			}
+
+			keys[entry] = key;
+			boards[entry] = rows;
+			types[entry] = (byte) type;
+			moves[entry] = move;
+			used[entry] = false;
+		}
+	}
+
+	/**
+	 * Whether or not the cache holds moves chosen
+	 * with the given constants.
+	 * @param constants the AI constants
+	 * @return true if the constants are the cache's
+	 */
+	public boolean isFor(double[] constants) {
+		return Arrays.equals(this.constants, constants);
+	}
+
+	/**
+	 * Whether or not the cache holds moves chosen on
+	 * boards the size of the given game's.
+	 * @param game the game
+	 * @return true if the board size is the cache's
+	 */
+	public boolean isFor(Tetris game) {
+		return width == game.board.width && height == game.board.height && visibleRows == game.visibleRows;
+	}
+
+	/**
+	 * The number of times a board was found in the cache.
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * The number of times a board wasn't found in the cache.
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * The number of entries evicted to make room.
+	 */
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * The share of lookups that found their board.
+	 * @return the hit rate, from 0 to 1
+	 */
+	public double hitRate() {
+		long hits = hits();
+		long lookups = hits + misses();
+		return lookups == 0 ? 0 : hits / (double) lookups;
+	}
+
+	/**
+	 * A string with the size and counters of the cache.
+	 */
+	public String toString() {
+		return String.format("%d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+				keys.length, hits(), misses(), 100 * hitRate(), evictions());
+	}
+}
@@ -0,0 +1,329 @@
+package tetris;
+
+/**
+ * A class to score moves from a vector of features and a vector
+ * of weights: the score of a move is the sum of each feature times
+ * its weight.
+ *
+ * The first four features are the ones Piece.score has always
+ * used, worked out from the piece where it lands: how high it is,
+ * the whitespace under it, its neighbors and the lines it clears.
+ * With weights for only these (see fromConstants), a move gets
+ * exactly the score Piece.score gives it.
+ *
+ * The rest describe the board after the piece is added and its
+ * lines are cleared: the total and highest column heights, the
+ * bumpiness (height differences between neighboring columns), the
+ * covered holes, the row and column transitions (changes between
+ * filled and empty going along a row or up a column, with the
+ * walls and floor counting as filled), and the wells (empty squares
+ * with filled squares or walls on both sides, each counting the
+ * squares of its well above and including it). These are all
+ * found in one pass over the rows of the board, a word of each row
+ * at a time, plus one over the columns, and only when one of them
+ * has a weight.
+ *
+ * Moves are scored in batches (see Candidates), a feature at a
+ * time over every move, skipping features with no weight. If the
+ * jdk.incubator.vector module is there, this is done with the Vector
+ * API (see VectorScoring); otherwise, or if the tetris.scalar system
+ * property is true, it is done in plain Java, with the same result.
+ *
+ * An evaluator keeps its own scratch board, so it makes nothing
+ * while scoring, but it can only be used by one thread.
+ */
+public class Evaluator {
+
+	/**
+	 * The features, as indexes of the feature and weight vectors.
+	 */
+	public final static int HEIGHT = 0;
+	public final static int WHITESPACE = 1;
+	public final static int NEIGHBORS = 2;
+	public final static int LINES = 3;
+	public final static int AGGREGATE_HEIGHT = 4;
+	public final static int MAX_HEIGHT = 5;
+	public final static int BUMPINESS = 6;
+	public final static int HOLES = 7;
+	public final static int ROW_TRANSITIONS = 8;
+	public final static int COLUMN_TRANSITIONS = 9;
+	public final static int WELLS = 10;
+	/**
+	 * The number of features.
+	 */
+	public final static int FEATURES = 11;
+	/**
+	 * The first feature of the board after the move.
+	 */
+	final static int FIRST_BOARD_FEATURE = AGGREGATE_HEIGHT;
+	/**
+	 * Whether or not moves are scored with the Vector API.
+	 */
+	public final static boolean VECTORS = !Boolean.getBoolean("tetris.scalar") &&
+			ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+	/**
+	 * The weight of each feature.
+	 */
+	final double[] weights;
+	/**
+	 * Whether or not any feature of the board after the
+	 * move has a weight, so the board has to be looked at.
+	 */
+	final boolean boardFeatures;
+	/**
+	 * The features with a weight, in order, and how many
+	 * there are.
+	 */
+	final int[] active = new int[FEATURES];
+	final int activeCount;
+	/**
+	 * The board the move is made on, to find the
+	 * features of the board after it.
+	 */
+	Board scratch;
+	/**
+	 * The features of the last board looked at.
+	 */
+	final double[] features = new double[FEATURES];
+	/**
+	 * For each column, the number of well squares in a row
+	 * above the current row, while looking for wells.
+	 */
+	int[] wellDepths;
+
+	/**
+	 * A constructor for the class.
+	 * @param weights the weight of each feature, in the order of the
+	 * feature indexes. Features past the end have no weight.
+	 */
+	public Evaluator(double[] weights) {
+		if( weights.length > FEATURES ) {
+			throw new IllegalArgumentException("there are only " + FEATURES + " features: " + weights.length);
+		}
+		this.weights = new double[FEATURES];
+		System.arraycopy(weights, 0, this.weights, 0, weights.length);
+
+		boolean any = false;
+		int count = 0;
+		for(int f=0; f<FEATURES; f++) {
+			if( this.weights[f] != 0 ) {
+				active[count++] = f;
+				any |= f >= FIRST_BOARD_FEATURE;
+			}
+		}
+		this.activeCount = count;
+		this.boardFeatures = any;
+	}
+
+	/**
+	 * Make an evaluator from AI constants, as used by Piece and
+	 * Tetris. The first four are the weights of the features of
+	 * Piece.score, where the whitespace is subtracted rather than
+	 * added; any more are the weights of the features of the board
+	 * after the move.
+	 * @param constants the AI constants
+	 * @return the evaluator
+	 */
+	public static Evaluator fromConstants(double[] constants) {
+		double[] weights = constants.clone();
+		if( weights.length > WHITESPACE ) {
+			weights[WHITESPACE] = -weights[WHITESPACE];
+		}
+		return new Evaluator(weights);
+	}
+
+	/**
+	 * Whether or not the features of the board after the
+	 * move are used.
+	 * @return true if they have a weight
+	 */
+	public boolean usesBoard() {
+		return boardFeatures;
+	}
+
+	/**
+	 * Score every move of a batch from its features. Each score
+	 * adds up the features in order, as Piece.score does, so with
+	 * weights for only its features the scores are the same.
+	 * @param moves the moves
+	 */
+	public void score(Candidates moves) {
+		if( VECTORS ) {
+			VectorScoring.score(weights, active, activeCount, moves.features, moves.score, moves.count);
+		} else {
+			score(weights, active, activeCount, moves.features, moves.score, moves.count);
+		}
+	}
+
+	/**
+	 * Score moves from their features in plain Java, the same
+	 * way as VectorScoring.score.
+	 * @param weights the weight of each feature
+	 * @param active the features with a weight, in order
+	 * @param activeCount the number of features with a weight
+	 * @param features the features of the moves, by feature and then by move
+	 * @param scores where to put the score of each move
+	 * @param count the number of moves
+	 */
+	static void score(double[] weights, int[] active, int activeCount,
+			double[][] features, double[] scores, int count) {
+		for(int m=0; m<count; m++) {
+			scores[m] = 0;
+		}
+		for(int a=0; a<activeCount; a++) {
+			int f = active[a];
+			double weight = weights[f];
+			double[] feature = features[f];
+			for(int m=0; m<count; m++) {
+				scores[m] += feature[m] * weight;
+			}
+		}
+	}
+
+	/**
+	 * The score of a feature vector.
+	 * @param features the features
+	 * @return the sum of each feature times its weight
+	 */
+	public double score(double[] features) {
+		double score = 0;
+		for(int f=0; f<FEATURES; f++) {
+			score += weights[f] * features[f];
+		}
+		return score;
+	}
+
+	/**
+	 * The features of the board after a move: add the piece,
+	 * where it has landed, to a copy of the board, clear its
+	 * lines, and look at the result.
+	 * @param board the board before the move
+	 * @param piece the piece, where it has landed on the board
+	 * @return the features, from FIRST_BOARD_FEATURE on, in an
+	 * array reused by the next call
+	 */
+	public double[] boardFeatures(Board board, Piece piece) {
+		boardFeatures(afterMove(board, piece), features);
+		return features;
+	}
+
+	/**
+	 * Every feature of a move.
+	 * @param board the board before the move
+	 * @param piece the piece, where it has landed on the board
+	 * @param features where to put the features
+	 */
+	public void features(Board board, Piece piece, double[] features) {
+		int highest = piece.highestPiece(board);
+		features[HEIGHT] = highest == 0 ? 0 : highest - piece.center.y;
+		features[WHITESPACE] = piece.whitespace(board);
+		features[NEIGHBORS] = piece.neighborPoints(board);
+		features[LINES] = piece.tetrises(board);
+		boardFeatures(afterMove(board, piece), features);
+	}
+
+	/**
+	 * Make the move on the scratch board.
+	 * @return the scratch board, after the move
+	 */
+	Board afterMove(Board board, Piece piece) {
+		if( scratch == null || scratch.width != board.width || scratch.height != board.height ) {
+			scratch = new Board(board.width, board.height);
+			wellDepths = new int[board.width];
+		}
+		scratch.copyFrom(board);
+		piece.add(scratch);
+		scratch.removeFullRows(piece.center.y + piece.shape.minY, piece.center.y + piece.shape.maxY);
+		return scratch;
+	}
+
+	/**
+	 * Find the features of a board: everything but the features
+	 * of the piece.
+	 * @param board the board
+	 * @param features where to put the features
+	 */
+	public void boardFeatures(Board board, double[] features) {
+		//the column features come from the heights the board keeps
+		int aggregate = 0;
+		int bumpiness = 0;
+		int holes = 0;
+		for(int x=0; x<board.width; x++) {
+			aggregate += board.heights[x];
+			holes += board.holes[x];
+			if( x > 0 ) {
+				bumpiness += Math.abs(board.heights[x] - board.heights[x-1]);
+			}
+		}
+
+		//the rest come from one pass down the rows, a word at a time
+		if( wellDepths == null || wellDepths.length != board.width ) {
+			wellDepths = new int[board.width];
+		}
+		int words = board.words;
+		long[] rows = board.rows;
+		long lastWall = 1L << ((board.width - 1) & 63);
+		int rowTransitions = 0;
+		int columnTransitions = 0;
+		int wells = 0;
+		for(int x=0; x<board.width; x++) {
+			wellDepths[x] = 0;
+		}
+		for(int y=board.maxHeight-1; y>=0; y--) {
+			int base = y*words;
+			for(int w=0; w<words; w++) {
+				long row = rows[base + w];
+				long mask = w == words-1 ? board.fullRow : -1L;
+				//the square left and right of each square, with the
+				//walls filled
+				long left = (row << 1) | (w == 0 ? 1 : rows[base + w - 1] >>> 63);
+				long right = (row >>> 1) | (w == words-1 ? lastWall : rows[base + w + 1] << 63);
+
+				//changes along the row, and out of the last square into the wall
+				rowTransitions += Long.bitCount((row ^ left) & mask);
+				if( w == words-1 && (row & lastWall) == 0 ) {
+					rowTransitions++;
+				}
+
+				//changes from the row below, with the floor filled
+				long below = y == 0 ? -1L : rows[base - words + w];
+				columnTransitions += Long.bitCount((row ^ below) & mask);
+
+				//wells: continue the depth of each column that is still
+				//in a well, and end the others
+				long well = ~row & left & right & mask;
+				long bits = mask;
+				while( bits != 0 ) {
+					int bit = Long.numberOfTrailingZeros(bits);
+					bits &= bits-1;
+					int x = (w << 6) + bit;
+					if( (well & (1L << bit)) != 0 ) {
+						wells += ++wellDepths[x];
+					} else {
+						wellDepths[x] = 0;
+					}
+				}
+			}
+		}
+		//and from the highest row into the empty one above it, or
+		//from the floor of an empty board
+		if( board.maxHeight > 0 ) {
+			int base = (board.maxHeight-1)*words;
+			for(int w=0; w<words; w++) {
+				long mask = w == words-1 ? board.fullRow : -1L;
+				columnTransitions += Long.bitCount(rows[base + w] & mask);
+			}
+		} else {
+			columnTransitions = board.width;
+		}
+
+		features[AGGREGATE_HEIGHT] = aggregate;
+		features[MAX_HEIGHT] = board.maxHeight;
+		features[BUMPINESS] = bumpiness;
+		features[HOLES] = holes;
+		features[ROW_TRANSITIONS] = rowTransitions;
+		features[COLUMN_TRANSITIONS] = columnTransitions;
+		features[WELLS] = wells;
+	}
+}
@@ -0,0 +1,305 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A binary log of what the live bot does, written to a file by a
+ * background thread so the bot never waits on I/O.
+ *
+ * Each event is a fixed size record, put in a ring buffer that is
+ * made once. Any thread can add records: a slot is claimed with one
+ * compare-and-set, filled in, and then marked as published. The
+ * drainer thread copies published records in order into a buffer and
+ * writes it to the file. If the ring is full, records are dropped
+ * (and counted) rather than holding up the bot. If the file can't be
+ * written, the drainer stops, later records are dropped, and the
+ * error is thrown by close.
+ *
+ * The file starts with MAGIC and VERSION as ints, followed by the
+ * records, each RECORD_BYTES long and little endian: the time since
+ * the log was opened (long nanoseconds), the kind (int), three int
+ * fields a, b and c, and a long field d. What the fields hold depends
+ * on the kind:
+ *
+ * GAME_START: a = board width, b = the rows the game is played in
+ * PIECE: a = type | rotation << 8 | column << 16, b = nanoseconds from
+ *        detecting the piece to finding its move, c = lines cleared |
+ *        row << 8, where row is the row of the center where the piece
+ *        landed (so tucks and spins can be placed again), d = hash of
+ *        the board afterwards
+ * KEY: a = key code, b = 1 for a press, 0 for a release
+ * RESYNC: d = hash of the board after it was made to match the screen,
+ *         followed by a ROWS record for each word of a row with blocks
+ * ROWS: a = the row, b = the word of the row (see Board), d = its bits
+ * GAME_END: a = pieces played
+ *
+ * EventLogViewer reads a log back and draws the boards.
+ */
+public class EventLog implements AutoCloseable {
+
+	/**
+	 * The start of a log file, and its format version.
+	 */
+	public final static int MAGIC = 0x474F4C54;
+	public final static int VERSION = 3;
+	/**
+	 * The size of a record in the file.
+	 */
+	public final static int RECORD_BYTES = 32;
+	/**
+	 * The kinds of record.
+	 */
+	public final static int GAME_START = 1;
+	public final static int PIECE = 2;
+	public final static int KEY = 3;
+	public final static int RESYNC = 4;
+	public final static int ROWS = 5;
+	public final static int GAME_END = 6;
+
+	/**
+	 * The ring of records, four longs each: the time, the kind
+	 * and a, b and c, and d.
+	 */
+	final long[] ring;
+	final int capacity;
+	/**
+	 * For each slot, the number of the record last published
+	 * in it, plus one.
+	 */
+	final AtomicLongArray published;
+	/**
+	 * The number of records claimed, and written out.
+	 */
+	final AtomicLong claimed = new AtomicLong();
+	volatile long drained;
+	/**
+	 * The number of records dropped because the ring was full,
+	 * or the file couldn't be written.
+	 */
+	final AtomicLong dropped = new AtomicLong();
+	/**
+	 * The file, and the buffer records are copied into to write it.
+	 */
+	final FileChannel channel;
+	final ByteBuffer out;
+	/**
+	 * The thread writing the file, and whether it should stop
+	 * once the ring is empty.
+	 */
+	final Thread drainer;
+	volatile boolean closing;
+	/**
+	 * What stopped the drainer writing the file, if anything.
+	 * Once it is set, records are dropped rather than added.
+	 */
+	volatile IOException failure;
+	/**
+	 * When the log was opened, from System.nanoTime.
+	 */
+	final long start = System.nanoTime();
+
+	/**
+	 * A constructor for the class. Creates (or replaces) the
+	 * file and starts the drainer thread.
+	 * @param path the file to write
+	 * @param capacity the number of records the ring holds, rounded up to a power of two
+	 */
+	public EventLog(Path path, int capacity) throws IOException {
+		this.capacity = Integer.highestOneBit(Math.max(capacity, 2) - 1) * 2;
+		this.ring = new long[this.capacity * 4];
+		this.published = new AtomicLongArray(this.capacity);
+
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		out = ByteBuffer.allocateDirect(1024 * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		out.putInt(MAGIC).putInt(VERSION);
+
+		drainer = new Thread(this::drain, "event-log");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	/**
+	 * Add a record, or drop it if the ring is full.
+	 */
+	void append(int kind, int a, int b, int c, long d) {
+		//claim the next slot, if it has been written out
+		long seq;
+		do {
+			seq = claimed.get();
+			if( seq - drained >= capacity || failure != null ) {
+				dropped.incrementAndGet();
+				return;
+			}
+		} while( !claimed.compareAndSet(seq, seq + 1) );
+
+		int slot = (int) seq & (capacity - 1);
+		int i = slot * 4;
+		ring[i] = System.nanoTime() - start;
+		ring[i+1] = (long) kind << 32 | (a & 0xFFFFFFFFL);
+		ring[i+2] = (long) b << 32 | (c & 0xFFFFFFFFL);
+		ring[i+3] = d;
+		//publishing the slot makes the record visible to the drainer
+		published.set(slot, seq + 1);
+	}
+
+	/**
+	 * Log the start of a game.
+	 * @param width the number of columns of the board
+	 * @param rows the number of rows the game is played in
+	 */
+	public void gameStart(int width, int rows) {
+		append(GAME_START, width, rows, 0, 0);
+	}
+
+	/**
+	 * Log a piece and where it was placed.
+	 * @param type the type of the piece
+	 * @param x the column of the center of the piece
+	 * @param y the row of the center of the piece, where it landed
+	 * @param rotation the rotation of the piece
+	 * @param lines the lines it cleared
+	 * @param decisionNanos the time from detecting the piece to finding its move
+	 * @param hash the hash of the board afterwards
+	 */
+	public void piece(int type, int x, int y, int rotation, int lines, long decisionNanos, long hash) {
+		append(PIECE, type | rotation << 8 | x << 16, (int) Math.min(decisionNanos, Integer.MAX_VALUE), lines | y << 8, hash);
+	}
+
+	/**
+	 * Log a key press or release.
+	 */
+	public void key(int keyCode, boolean press) {
+		append(KEY, keyCode, press ? 1 : 0, 0, 0);
+	}
+
+	/**
+	 * Log a board that was changed to match the screen,
+	 * with all of its blocks.
+	 */
+	public void resync(Board board) {
+		append(RESYNC, 0, 0, 0, board.hash());
+		for(int y=0; y<board.maxHeight; y++) {
+			for(int w=0; w<board.words; w++) {
+				long bits = board.rows[y*board.words + w];
+				if( bits != 0 ) {
+					append(ROWS, y, w, 0, bits);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Log the end of a game.
+	 */
+	public void gameEnd(int pieces) {
+		append(GAME_END, pieces, 0, 0, 0);
+	}
+
+	/**
+	 * Wrap a key output so every key sent through it is
+	 * logged before it is passed on.
+	 * @param next where the keys go
+	 * @return the logging key output
+	 */
+	public KeyOutput keys(KeyOutput next) {
+		return new KeyOutput() {
+			public void press(int keyCode) {
+				key(keyCode, true);
+				next.press(keyCode);
+			}
+
+			public void release(int keyCode) {
+				key(keyCode, false);
+				next.release(keyCode);
+			}
+		};
+	}
+
+	/**
+	 * The number of records dropped because the ring was full,
+	 * or the file couldn't be written.
+	 */
+	public long dropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Write records out as they are published, until closed.
+	 */
+	void drain() {
+		try {
+			while( true ) {
+				//copy every published record, in order
+				long seq = drained;
+				int copied = 0;
+				while( out.remaining() >= RECORD_BYTES ) {
+					int slot = (int) seq & (capacity - 1);
+					if( published.get(slot) != seq + 1 ) {
+						break;
+					}
+					int i = slot * 4;
+					out.putLong(ring[i]);
+					out.putInt((int) (ring[i+1] >>> 32)).putInt((int) ring[i+1]);
+					out.putInt((int) (ring[i+2] >>> 32)).putInt((int) ring[i+2]);
+					out.putLong(ring[i+3]);
+					seq++;
+					copied++;
+				}
+				//free the slots
+				drained = seq;
+
+				if( out.position() > 0 && (copied == 0 || out.remaining() < RECORD_BYTES) ) {
+					flush();
+				}
+				if( copied == 0 ) {
+					if( closing && claimed.get() == drained ) {
+						flush();
+						return;
+					}
+					LockSupport.parkNanos(1000000);
+				}
+			}
+		} catch (IOException e) {
+			//stop, and leave the error for close
+			failure = e;
+		}
+	}
+
+	/**
+	 * Write the buffer to the file.
+	 */
+	void flush() throws IOException {
+		out.flip();
+		while( out.hasRemaining() ) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	/**
+	 * Write out every record logged, and close the file.
+	 * @throws IOException if the file couldn't be written,
+	 * whether now or while the log was open
+	 */
+	public void close() throws IOException {
+		closing = true;
+		try {
+			drainer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if( failure != null ) {
+			throw new IOException("could not write event log", failure);
+		}
+	}
+}
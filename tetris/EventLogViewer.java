@@ -0,0 +1,166 @@
+package tetris;
+
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A tool to read an EventLog back and print it for people.
+ *
+ * The boards aren't in the log, only the pieces and where they
+ * went, so the viewer plays them again on its own board. Each
+ * board is checked against the hash logged with its piece, so a
+ * board that is drawn is the board the bot had. Resyncs log every
+ * row, and replace the viewer's board.
+ *
+ * EventLogViewer file [--keys] [--no-boards]
+ */
+public class EventLogViewer {
+
+	/**
+	 * The mapped log.
+	 */
+	MappedByteBuffer buffer;
+	/**
+	 * The game being played again.
+	 */
+	Tetris tetris;
+	/**
+	 * Whether to print the keys, and the boards.
+	 */
+	boolean keys;
+	boolean boards = true;
+	/**
+	 * The number of boards that didn't match their hash.
+	 */
+	int mismatches;
+
+	/**
+	 * A constructor for the class. Maps the log and checks
+	 * its header.
+	 * @param file the log
+	 */
+	public EventLogViewer(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if( buffer.limit() < 8 || buffer.getInt(0) != EventLog.MAGIC ) {
+			throw new IOException("not an event log: " + file);
+		}
+		if( buffer.getInt(4) != EventLog.VERSION ) {
+			throw new IOException("unknown event log version: " + buffer.getInt(4));
+		}
+	}
+
+	/**
+	 * Print every record in the log.
+	 * @param out where to print
+	 */
+	public void print(PrintStream out) {
+		tetris = new Tetris();
+		for(int at=8; at+EventLog.RECORD_BYTES<=buffer.limit(); at+=EventLog.RECORD_BYTES) {
+			double millis = buffer.getLong(at) / 1e6;
+			int kind = buffer.getInt(at + 8);
+			int a = buffer.getInt(at + 12);
+			int b = buffer.getInt(at + 16);
+			int c = buffer.getInt(at + 20);
+			long d = buffer.getLong(at + 24);
+
+			switch( kind ) {
+			case EventLog.GAME_START:
+				out.printf("%10.3f ms  game start, %dx%d board%n", millis, a, b);
+				tetris = new Tetris(a, b);
+				break;
+			case EventLog.PIECE:
+				int type = a & 0xff;
+				int rotation = (a >>> 8) & 0xff;
+				int x = a >> 16;
+				int row = c >> 8;
+				int lines = c & 0xff;
+				out.printf("%10.3f ms  piece %d to column %d, row %d, rotation %d, %d lines, decided in %.1f us%n",
+						millis, type, x, row, rotation, lines, b / 1e3);
+				//place it on our board too, where it landed, which
+				//may be under an overhang
+				tetris.addPiece(type);
+				tetris.placePiece(x, row, rotation);
+				tetris.tetrisify();
+				check(out, d);
+				if( boards ) {
+					out.print(tetris.boardString());
+				}
+				break;
+			case EventLog.KEY:
+				if( keys ) {
+					out.printf("%10.3f ms  %s %s%n", millis,
+							b == 1 ? "press" : "release", KeyEvent.getKeyText(a));
+				}
+				break;
+			case EventLog.RESYNC:
+				out.printf("%10.3f ms  model didn't match the screen, resynced%n", millis);
+				//the rows follow
+				tetris.board.clear();
+				int next = at + EventLog.RECORD_BYTES;
+				while( next + EventLog.RECORD_BYTES <= buffer.limit() && buffer.getInt(next + 8) == EventLog.ROWS ) {
+					int y = buffer.getInt(next + 12);
+					int w = buffer.getInt(next + 16);
+					tetris.board.rows[y*tetris.board.words + w] = buffer.getLong(next + 24);
+					at = next;
+					next += EventLog.RECORD_BYTES;
+				}
+				tetris.board.recount();
+				check(out, d);
+				if( boards ) {
+					out.print(tetris.boardString());
+				}
+				break;
+			case EventLog.GAME_END:
+				out.printf("%10.3f ms  game over after %d pieces, %d lines%n", millis, a, tetris.tetrises);
+				break;
+			default:
+				out.printf("%10.3f ms  unknown record %d%n", millis, kind);
+			}
+		}
+		if( mismatches > 0 ) {
+			out.printf("%d boards didn't match the log%n", mismatches);
+		}
+	}
+
+	/**
+	 * Check our board against a logged hash, and say
+	 * so if it doesn't match.
+	 */
+	void check(PrintStream out, long hash) {
+		if( tetris.board.hash() != hash ) {
+			out.printf("%10s     board doesn't match the log%n", "");
+			mismatches++;
+		}
+	}
+
+	/**
+	 * Print a log:
+	 *
+	 * EventLogViewer file [--keys] [--no-boards]
+	 */
+	public static void main(String[] args) throws IOException {
+		if( args.length == 0 ) {
+			System.err.println("usage: EventLogViewer file [--keys] [--no-boards]");
+			System.exit(1);
+		}
+		EventLogViewer viewer = new EventLogViewer(Paths.get(args[0]));
+		for(int i=1; i<args.length; i++) {
+			if( args[i].equals("--keys") ) {
+				viewer.keys = true;
+			} else if( args[i].equals("--no-boards") ) {
+				viewer.boards = false;
+			}
+		}
+		viewer.print(System.out);
+	}
+}
@@ -0,0 +1,156 @@
+package tetris;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A class to poll the screen through a FrameSource. Each poll
+ * captures one region, which covers every pixel the bot reads,
+ * and the pixels are then read straight out of the captured
+ * image's raster.
+ *
+ * The time each capture takes is recorded, so the latency of
+ * seeing the game can be measured.
+ */
+public class FramePoller {
+
+	/**
+	 * The source of the frames.
+	 */
+	FrameSource source;
+	/**
+	 * The region of the screen captured on each poll.
+	 */
+	Rectangle region;
+	/**
+	 * How long to wait between polls, in nanoseconds.
+	 * With 0, polls are made back to back.
+	 */
+	public long POLL_NANOS;
+	/**
+	 * The last frame captured, and its pixels if they can
+	 * be read from its raster directly (otherwise null),
+	 * with the length of a row of them.
+	 */
+	BufferedImage frame;
+	int[] pixels;
+	int stride;
+	/**
+	 * The number of captures, their total time and
+	 * the longest one, in nanoseconds.
+	 */
+	long captures;
+	long captureNanos;
+	long maxCaptureNanos;
+
+	/**
+	 * A constructor for the class.
+	 * @param source the source of the frames
+	 * @param region the region of the screen to capture
+	 * @param pollNanos how long to wait between polls, in nanoseconds
+	 */
+	public FramePoller(FrameSource source, Rectangle region, long pollNanos) {
+		this.source = source;
+		this.region = region;
+		this.POLL_NANOS = pollNanos;
+	}
+
+	/**
+	 * The smallest region of the screen that covers
+	 * every one of the given pixels.
+	 * @param xs the x coordinates of the pixels
+	 * @param ys the y coordinates of the pixels
+	 * @return the region
+	 */
+	public static Rectangle bounds(int[] xs, int[] ys) {
+		Rectangle region = new Rectangle(xs[0], ys[0], 1, 1);
+		for(int i=1; i<xs.length; i++) {
+			region.add(new Rectangle(xs[i], ys[i], 1, 1));
+		}
+		return region;
+	}
+
+	/**
+	 * Capture a new frame, timing the capture.
+	 * @return the frame
+	 */
+	public BufferedImage capture() {
+		long start = System.nanoTime();
+		frame = source.capture(region);
+		long nanos = System.nanoTime() - start;
+
+		captures++;
+		captureNanos += nanos;
+		maxCaptureNanos = Math.max(maxCaptureNanos, nanos);
+
+		//screen captures are packed ints, one per pixel, which
+		//can be read without going through the color model
+		pixels = null;
+		if( frame.getRaster().getDataBuffer() instanceof DataBufferInt
+				&& frame.getSampleModel() instanceof SinglePixelPackedSampleModel
+				&& frame.getRaster().getSampleModelTranslateX() == 0
+				&& frame.getRaster().getSampleModelTranslateY() == 0
+				&& (frame.getType() == BufferedImage.TYPE_INT_RGB || frame.getType() == BufferedImage.TYPE_INT_ARGB) ) {
+			pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+			stride = ((SinglePixelPackedSampleModel) frame.getSampleModel()).getScanlineStride();
+		}
+		return frame;
+	}
+
+	/**
+	 * Wait until the next poll.
+	 */
+	public void pause() {
+		if( POLL_NANOS > 0 ) {
+			LockSupport.parkNanos(POLL_NANOS);
+		}
+	}
+
+	/**
+	 * The color of a pixel of the last frame, as packed
+	 * 0xRRGGBB. The pixel must be in the region.
+	 * @param x the x coordinate of the pixel on the screen
+	 * @param y the y coordinate of the pixel on the screen
+	 * @return the color of the pixel
+	 */
+	public int rgb(int x, int y) {
+		x -= region.x;
+		y -= region.y;
+		if( pixels != null ) {
+			return pixels[y*stride + x] & 0xFFFFFF;
+		}
+		return frame.getRGB(x, y) & 0xFFFFFF;
+	}
+
+	/**
+	 * The number of frames captured.
+	 */
+	public long captures() {
+		return captures;
+	}
+
+	/**
+	 * The mean time to capture a frame, in microseconds.
+	 */
+	public double meanCaptureMicros() {
+		return captures == 0 ? 0 : captureNanos / 1000.0 / captures;
+	}
+
+	/**
+	 * The longest time to capture a frame, in microseconds.
+	 */
+	public double maxCaptureMicros() {
+		return maxCaptureNanos / 1000.0;
+	}
+
+	/**
+	 * A string with the capture latency.
+	 */
+	public String toString() {
+		return String.format("%d captures of %dx%d, mean %.1f us, max %.1f us",
+				captures, region.width, region.height, meanCaptureMicros(), maxCaptureMicros());
+	}
+}
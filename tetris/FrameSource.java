@@ -0,0 +1,19 @@
+package tetris;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * An interface for where the bot sees the game: something that
+ * can capture a region of the screen as an image.
+ */
+public interface FrameSource {
+
+	/**
+	 * Capture a region of the screen. Pixel (0, 0) of the
+	 * image is the top left corner of the region.
+	 * @param region the region of the screen, in screen coordinates
+	 * @return the image of the region
+	 */
+	BufferedImage capture(Rectangle region);
+}
@@ -0,0 +1,54 @@
+package tetris;
+
+/**
+ * A class to hold the result of one simulated game.
+ */
+public class GameResult {
+
+	/**
+	 * The seed the game's pieces were drawn with.
+	 */
+	public final long seed;
+	/**
+	 * The number of pieces played, including the
+	 * piece that ended the game.
+	 */
+	public final long pieces;
+	/**
+	 * The number of lines cleared.
+	 */
+	public final long lines;
+	/**
+	 * How long the game took to play, in nanoseconds.
+	 */
+	public final long nanos;
+	/**
+	 * Whether the game was stopped before it ended, by a budget
+	 * or by running out of pieces, so it would have gone on for
+	 * at least as many pieces as it did.
+	 */
+	public final boolean censored;
+
+	/**
+	 * Constructor
+	 * @param seed the seed of the game
+	 * @param pieces the pieces played
+	 * @param lines the lines cleared
+	 * @param nanos the time taken
+	 * @param censored whether the game was stopped before it ended
+	 */
+	public GameResult(long seed, long pieces, long lines, long nanos, boolean censored) {
+		this.seed = seed;
+		this.pieces = pieces;
+		this.lines = lines;
+		this.nanos = nanos;
+		this.censored = censored;
+	}
+
+	/**
+	 * A toString for the result (for debugging).
+	 */
+	public String toString() {
+		return "seed: " + seed + " pieces: " + pieces + " lines: " + lines + (censored ? " (censored)" : "");
+	}
+}
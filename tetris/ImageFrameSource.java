@@ -0,0 +1,49 @@
+package tetris;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * A source of frames from an image in memory, which stands in
+ * for the screen. This lets the bot's screen reading be tested
+ * and timed without a display.
+ *
+ * The screen can be replaced at any time, such as by a game
+ * drawing its next frame, and each capture copies the region
+ * from the latest screen.
+ */
+public class ImageFrameSource implements FrameSource {
+
+	/**
+	 * The image standing in for the screen.
+	 */
+	volatile BufferedImage screen;
+
+	/**
+	 * Constructor
+	 * @param screen the image standing in for the screen
+	 */
+	public ImageFrameSource(BufferedImage screen) {
+		this.screen = screen;
+	}
+
+	/**
+	 * Replace the screen.
+	 * @param screen the new image standing in for the screen
+	 */
+	public void setScreen(BufferedImage screen) {
+		this.screen = screen;
+	}
+
+	/**
+	 * Copy the region of the screen into a new image, as
+	 * a screen capture would.
+	 */
+	public BufferedImage capture(Rectangle region) {
+		BufferedImage frame = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+		screen.getRGB(region.x, region.y, region.width, region.height, pixels, 0, region.width);
+		return frame;
+	}
+}
@@ -0,0 +1,21 @@
+package tetris;
+
+/**
+ * An interface for where the bot's key presses go, such as
+ * the real keyboard through a Robot. Keys are given by their
+ * KeyEvent key codes.
+ */
+public interface KeyOutput {
+
+	/**
+	 * Press a key.
+	 * @param keyCode the key, such as KeyEvent.VK_UP
+	 */
+	void press(int keyCode);
+
+	/**
+	 * Release a key.
+	 * @param keyCode the key, such as KeyEvent.VK_UP
+	 */
+	void release(int keyCode);
+}
@@ -0,0 +1,224 @@
+package tetris;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A class to send key presses on their own thread, at set times.
+ *
+ * Keys are queued with the time each press and release is due,
+ * and a thread sends each one when it is due. The times are worked
+ * out when the keys are queued: each key is held for the key time,
+ * and the next key comes the gap time after it is released. So the
+ * thread that queues the keys is free as soon as they are queued,
+ * and the spacing of the keys doesn't grow with the time it takes
+ * to send each one, as it does with a sleep after each.
+ *
+ * If a key can't be sent, or the thread is interrupted, the thread
+ * stops, the keys still queued are dropped, and the failure is
+ * thrown to the thread queueing keys the next time it queues a key
+ * or waits for them.
+ */
+public class KeyScheduler {
+
+	/**
+	 * A press or release of a key, and when it is due.
+	 */
+	static class Action {
+		final long deadline;
+		final int keyCode;
+		final boolean press;
+
+		Action(long deadline, int keyCode, boolean press) {
+			this.deadline = deadline;
+			this.keyCode = keyCode;
+			this.press = press;
+		}
+	}
+
+	/**
+	 * Queued to stop the thread.
+	 */
+	final static Action STOP = new Action(0, 0, false);
+
+	/**
+	 * Where the keys are sent.
+	 */
+	KeyOutput output;
+	/**
+	 * How long each key is held, and how long after it
+	 * is released the next key can be pressed, in nanoseconds.
+	 */
+	long keyNanos;
+	long gapNanos;
+	/**
+	 * The keys waiting to be sent, in the order they are due.
+	 */
+	LinkedBlockingQueue<Action> queue = new LinkedBlockingQueue<Action>();
+	/**
+	 * The thread sending the keys.
+	 */
+	Thread thread;
+	/**
+	 * When the next key queued can be pressed. This is
+	 * only used by the thread queueing keys.
+	 */
+	long nextDeadline;
+	/**
+	 * The number of keys queued but not sent yet, and what
+	 * stopped the thread from sending a key, if anything,
+	 * guarded by the scheduler's lock.
+	 */
+	int pending;
+	Throwable failure;
+	/**
+	 * The number of presses and releases sent, and the
+	 * total and longest time they were sent after they
+	 * were due, in nanoseconds. These are written by the
+	 * sending thread only.
+	 */
+	volatile long sent;
+	volatile long lateNanos;
+	volatile long maxLateNanos;
+
+	/**
+	 * A constructor for the class. Starts the thread
+	 * sending the keys.
+	 * @param output where to send the keys
+	 * @param keyNanos how long to hold each key, in nanoseconds
+	 * @param gapNanos how long to wait after releasing a key, in nanoseconds
+	 */
+	public KeyScheduler(KeyOutput output, long keyNanos, long gapNanos) {
+		this.output = output;
+		this.keyNanos = keyNanos;
+		this.gapNanos = gapNanos;
+		this.nextDeadline = System.nanoTime();
+
+		thread = new Thread(this::run, "key-scheduler");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queue a key to be pressed and released, after every
+	 * key queued before it.
+	 * @param keyCode the key, such as KeyEvent.VK_UP
+	 */
+	public void type(int keyCode) {
+		//start when the last key is done, or now if that has passed
+		long press = Math.max(System.nanoTime(), nextDeadline);
+		long release = press + keyNanos;
+		nextDeadline = release + gapNanos;
+
+		synchronized(this) {
+			checkFailure();
+			pending += 2;
+		}
+		queue.add(new Action(press, keyCode, true));
+		queue.add(new Action(release, keyCode, false));
+	}
+
+	/**
+	 * Wait until every key queued has been sent, and the
+	 * gap after the last of them has passed.
+	 * @throws IllegalStateException if a key couldn't be sent
+	 */
+	public void awaitIdle() throws InterruptedException {
+		synchronized(this) {
+			while( pending > 0 ) {
+				wait();
+			}
+			checkFailure();
+		}
+		waitUntil(nextDeadline);
+	}
+
+	/**
+	 * Throw the failure of the thread sending the keys, if it
+	 * has failed. Must be called with the scheduler's lock.
+	 */
+	void checkFailure() {
+		if( failure != null ) {
+			throw new IllegalStateException("could not send a key", failure);
+		}
+	}
+
+	/**
+	 * Stop the thread sending the keys, once the
+	 * keys already queued have been sent.
+	 */
+	public void shutdown() {
+		queue.add(STOP);
+	}
+
+	/**
+	 * Send each key when it is due, until stopped.
+	 */
+	void run() {
+		Throwable stopped = null;
+		try {
+			while( true ) {
+				Action action = queue.take();
+				if( action == STOP ) {
+					return;
+				}
+				waitUntil(action.deadline);
+
+				//send it, and note how late it was
+				long start = System.nanoTime();
+				long late = start - action.deadline;
+				if( action.press ) {
+					output.press(action.keyCode);
+				} else {
+					output.release(action.keyCode);
+				}
+				Metrics.recordSince(Metrics.Timer.KEY, start);
+				sent++;
+				lateNanos += late;
+				maxLateNanos = Math.max(maxLateNanos, late);
+
+				synchronized(this) {
+					if( --pending == 0 ) {
+						notifyAll();
+					}
+				}
+			}
+		} catch (Throwable e) {
+			//interrupted, or a key couldn't be sent
+			stopped = e;
+		} finally {
+			//however the thread stops, drop the keys left and
+			//wake anyone waiting for them
+			synchronized(this) {
+				if( stopped != null ) {
+					failure = stopped;
+				}
+				pending = 0;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Wait until the given time.
+	 * @param deadline the time, from System.nanoTime
+	 */
+	static void waitUntil(long deadline) throws InterruptedException {
+		long left;
+		while( (left = deadline - System.nanoTime()) > 0 ) {
+			LockSupport.parkNanos(left);
+			if( Thread.interrupted() ) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	/**
+	 * A string with how many keys were sent, and how late.
+	 */
+	public String toString() {
+		long sent = this.sent;
+		return String.format("%d key events, mean %.1f us late, max %.1f us late",
+				sent, sent == 0 ? 0 : lateNanos / 1000.0 / sent, maxLateNanos / 1000.0);
+	}
+}
@@ -0,0 +1,305 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * A class to play a large batch of simulated games in lockstep,
+ * without an object per game. Every game is a slot in a few flat
+ * arrays, laid out a field at a time: the packed rows of every
+ * board one after another (as in Board), then the column heights
+ * and holes of every board, then the state of the piece generator
+ * (see UniformPieceSource), the pieces played and the lines cleared
+ * of every game. On the default board a game takes about 300 bytes,
+ * so a million games fit in a few hundred megabytes.
+ *
+ * The boards and columns can be kept on the heap, or off it in
+ * direct buffers, which the garbage collector never has to scan
+ * or move.
+ *
+ * A batch is played in passes. Each pass places the next piece
+ * of every game still being played, in slot order: the game is
+ * loaded into a scratch board, its next piece is drawn, the best
+ * move is found and made as TetrisAI does with no preview (see
+ * Tetris.findMoves), and the board is stored back. Finished games
+ * are compacted out in the same pass, by storing each game still
+ * being played into the first free slot, so every pass runs over
+ * a dense prefix of the slots from the start.
+ *
+ * The games play the same pieces and moves as TetrisAI.playGame
+ * with the same seeds and AI constants, so their pieces and lines
+ * are the same too. As the games share their passes, the time of
+ * a game is from the start of the batch to the pass it ended in.
+ *
+ * A LockstepGames can only be used by one thread; for more
+ * threads, split the seeds between one for each.
+ */
+public class LockstepGames {
+
+	/**
+	 * The AI constants every game is played with.
+	 */
+	final double[] constants;
+	/**
+	 * Whether the boards and columns are kept off the heap.
+	 */
+	final boolean offHeap;
+	/**
+	 * The game the moves are found with, and the
+	 * board and piece each game is played on.
+	 */
+	final Tetris game;
+	final Board board;
+	final Piece piece;
+	/**
+	 * The number of longs of each board, and the
+	 * number of ints of the columns of each board.
+	 */
+	final int boardStride;
+	final int columnStride;
+	/**
+	 * The rows of every board, and the heights and then
+	 * the holes of the columns of every board, a stride
+	 * to a slot.
+	 */
+	LongBuffer boards;
+	IntBuffer columns;
+	/**
+	 * For each slot: the state of the piece generator of its
+	 * game, the pieces it has played, the lines it has cleared,
+	 * and the index of its game in the batch.
+	 */
+	long[] seeds;
+	long[] pieces;
+	long[] lines;
+	int[] indexes;
+	/**
+	 * The number of games still being played, which
+	 * are in the first slots.
+	 */
+	int live;
+	/**
+	 * The most pieces a game is played for, and the most
+	 * time a batch is played for in nanoseconds, or 0 for
+	 * no limit. Games stopped by either are censored.
+	 */
+	public long MAX_PIECES;
+	public long MAX_NANOS;
+
+	/**
+	 * A constructor for games on the default board.
+	 * @param aiConstants the AI constants
+	 * @param offHeap whether to keep the boards off the heap
+	 */
+	public LockstepGames(double[] aiConstants, boolean offHeap) {
+		this(aiConstants, Tetris.BOARD_DIMENSIONS.width, Tetris.BOARD_DIMENSIONS.height - Tetris.VERTICAL_BUFFER, offHeap);
+	}
+
+	/**
+	 * A constructor for games on a board of any size.
+	 * @param aiConstants the AI constants
+	 * @param width the number of columns
+	 * @param rows the number of rows the games are played in
+	 * @param offHeap whether to keep the boards off the heap
+	 */
+	public LockstepGames(double[] aiConstants, int width, int rows, boolean offHeap) {
+		if( aiConstants == null || aiConstants.length == 0 ) {
+			throw new IllegalArgumentException("games need AI constants");
+		}
+		this.constants = aiConstants;
+		this.offHeap = offHeap;
+		this.game = new Tetris(width, rows, aiConstants);
+		this.board = new Board(game.board.width, game.board.height);
+		this.piece = new Piece(0, game.DROP_POINT);
+		this.boardStride = board.height * board.words;
+		this.columnStride = 2 * board.width;
+	}
+
+	/**
+	 * Stop each game after the given number of pieces, and
+	 * the whole batch after the given time.
+	 * @param maxPieces the most pieces to play in a game, or 0 for no limit
+	 * @param maxNanos the most time to play a batch for in nanoseconds, or 0 for no limit
+	 */
+	public void setBudget(long maxPieces, long maxNanos) {
+		this.MAX_PIECES = maxPieces;
+		this.MAX_NANOS = maxNanos;
+	}
+
+	/**
+	 * Make room for the given number of games, keeping
+	 * the storage of the last batch if it is big enough.
+	 * @param games the number of games
+	 */
+	void allocate(int games) {
+		if( seeds != null && seeds.length >= games ) {
+			return;
+		}
+		long longs = (long) games * boardStride;
+		long ints = (long) games * columnStride;
+		long bytes = offHeap ? Math.max(longs * Long.BYTES, ints * Integer.BYTES) : Math.max(longs, ints);
+		if( bytes > Integer.MAX_VALUE ) {
+			throw new IllegalArgumentException("too many games for one buffer: " + games);
+		}
+		if( offHeap ) {
+			boards = ByteBuffer.allocateDirect((int) (longs * Long.BYTES)).order(ByteOrder.nativeOrder()).asLongBuffer();
+			columns = ByteBuffer.allocateDirect((int) (ints * Integer.BYTES)).order(ByteOrder.nativeOrder()).asIntBuffer();
+		} else {
+			boards = LongBuffer.wrap(new long[(int) longs]);
+			columns = IntBuffer.wrap(new int[(int) ints]);
+		}
+		seeds = new long[games];
+		pieces = new long[games];
+		lines = new long[games];
+		indexes = new int[games];
+	}
+
+	/**
+	 * Play a game from each seed, in lockstep, until every one
+	 * has ended or been stopped by the budget.
+	 * @param seeds the seed of each game
+	 * @return the results of the games, in the order of their seeds
+	 */
+	public BatchResult play(long[] seeds) {
+		long start = System.nanoTime();
+		long deadline = MAX_NANOS > 0 ? start + MAX_NANOS : 0;
+		allocate(seeds.length);
+
+		//every game starts on an empty board. only the rows under
+		//the highest column of a board are ever read, so only the
+		//columns have to be cleared
+		for(int s=0; s<seeds.length; s++) {
+			this.seeds[s] = seeds[s];
+			pieces[s] = 0;
+			lines[s] = 0;
+			indexes[s] = s;
+		}
+		for(int i=0; i<seeds.length*columnStride; i++) {
+			columns.put(i, 0);
+		}
+		live = seeds.length;
+
+		GameResult[] results = new GameResult[seeds.length];
+		while( live > 0 ) {
+			pass(results, seeds, start);
+
+			//stop every game left once the time is up
+			if( deadline != 0 && live > 0 && System.nanoTime() - deadline >= 0 ) {
+				long nanos = System.nanoTime() - start;
+				for(int s=0; s<live; s++) {
+					finish(results, seeds, s, nanos, true);
+				}
+				live = 0;
+			}
+		}
+		return new BatchResult(constants, results, System.nanoTime() - start);
+	}
+
+	/**
+	 * Place the next piece of every game still being played,
+	 * and compact out the games that end.
+	 * @param results where to put the result of each game that ends
+	 * @param seeds the seed of each game, for its result
+	 * @param start the System.nanoTime the batch started at
+	 */
+	void pass(GameResult[] results, long[] seeds, long start) {
+		int placed = 0;
+		long cleared = 0;
+		int write = 0;
+		for(int s=0; s<live; s++) {
+			load(s);
+			int type = UniformPieceSource.next(this.seeds, s);
+			pieces[s]++;
+
+			//find the best move, which is the last of the best scores
+			int moves = game.findMoves(board, type);
+			int best = -1;
+			for(int m=0; m<moves; m++) {
+				if( best < 0 || game.moveScores[m] >= game.moveScores[best] ) {
+					best = m;
+				}
+			}
+			if( best < 0 ) {
+				//nowhere to put the piece, so the game is over
+				finish(results, seeds, s, System.nanoTime() - start, false);
+				continue;
+			}
+
+			//drop the piece from the drop height and clear its lines
+			piece.reset(type, game.moveX[best], game.DROP_POINT.y);
+			piece.rotateTo(game.moveRotations[best]);
+			piece.add(board);
+			int removed = board.removeFullRows(piece.center.y + piece.shape.minY, piece.center.y + piece.shape.maxY);
+			lines[s] += removed;
+			placed++;
+			cleared += removed;
+
+			if( MAX_PIECES > 0 && pieces[s] >= MAX_PIECES ) {
+				finish(results, seeds, s, System.nanoTime() - start, true);
+				continue;
+			}
+
+			//keep the game, in the first free slot
+			store(write);
+			if( write != s ) {
+				this.seeds[write] = this.seeds[s];
+				pieces[write] = pieces[s];
+				lines[write] = lines[s];
+				indexes[write] = indexes[s];
+			}
+			write++;
+		}
+		live = write;
+
+		Metrics.count(Metrics.Counter.PIECES, placed);
+		if( cleared > 0 ) {
+			Metrics.count(Metrics.Counter.LINES, cleared);
+		}
+	}
+
+	/**
+	 * Note the result of the game in a slot.
+	 */
+	void finish(GameResult[] results, long[] seeds, int s, long nanos, boolean censored) {
+		int index = indexes[s];
+		results[index] = new GameResult(seeds[index], pieces[s], lines[s], nanos, censored);
+		Metrics.count(Metrics.Counter.GAMES, 1);
+	}
+
+	/**
+	 * Load the board of a slot into the scratch board.
+	 * @param s the slot
+	 */
+	void load(int s) {
+		int at = s*columnStride;
+		columns.get(at, board.heights, 0, board.width);
+		columns.get(at + board.width, board.holes, 0, board.width);
+		int top = 0;
+		for(int x=0; x<board.width; x++) {
+			top = Math.max(top, board.heights[x]);
+		}
+
+		//the rows above the highest column are empty, and the
+		//scratch board is already empty above its own
+		boards.get(s*boardStride, board.rows, 0, top*board.words);
+		for(int i=top*board.words; i<board.maxHeight*board.words; i++) {
+			board.rows[i] = 0;
+		}
+		board.maxHeight = top;
+	}
+
+	/**
+	 * Store the scratch board into a slot. Only the rows under
+	 * the highest column are stored; the rest of the slot is
+	 * never read.
+	 * @param s the slot
+	 */
+	void store(int s) {
+		int at = s*columnStride;
+		columns.put(at, board.heights, 0, board.width);
+		columns.put(at + board.width, board.holes, 0, board.width);
+		boards.put(s*boardStride, board.rows, 0, board.maxHeight*board.words);
+	}
+}
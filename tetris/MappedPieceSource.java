@@ -0,0 +1,157 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A source of pieces streamed from a file of pre-generated or
+ * recorded pieces. The file is memory-mapped, so even very long
+ * streams cost nothing to open and are read straight from the
+ * page cache. The whole file is mapped at once, so it can be at
+ * most 2 GB, which holds MAX_PIECES (about 5.7 billion) pieces.
+ *
+ * The file starts with the number of pieces as an 8 byte long,
+ * followed by the pieces packed 3 bits each: piece i is in bits
+ * 3i to 3i+2 of the rest of the file, counting from the lowest
+ * bit of the first byte.
+ */
+public class MappedPieceSource implements PieceSource {
+
+	/**
+	 * The size of the header.
+	 */
+	final static int HEADER = 8;
+	/**
+	 * The most pieces a file can hold.
+	 */
+	public final static long MAX_PIECES = (Integer.MAX_VALUE - HEADER) * 8L / 3;
+
+	/**
+	 * The mapped file.
+	 */
+	MappedByteBuffer buffer;
+	/**
+	 * The number of pieces in the file, and
+	 * the index of the next piece.
+	 */
+	long count;
+	long position;
+
+	/**
+	 * Constructor. Maps the file, and checks that it
+	 * holds as many pieces as its header says.
+	 * @param file the file of pieces
+	 * @throws IOException if the file can't be read, or is too
+	 * short or too long for the number of pieces in its header
+	 */
+	public MappedPieceSource(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if( size < HEADER ) {
+				throw new IOException("not a piece file: " + file);
+			}
+			if( size > Integer.MAX_VALUE ) {
+				throw new IOException("piece file is over 2 GB: " + file);
+			}
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+		this.count = buffer.getLong(0);
+		//check the count is in range first, so the size can't overflow
+		if( count < 0 || count > MAX_PIECES || HEADER + (3*count + 7) / 8 > buffer.limit() ) {
+			throw new IOException("piece file is truncated: " + count + " pieces in its header, "
+					+ (buffer.limit() - HEADER) + " bytes of pieces: " + file);
+		}
+		this.position = 0;
+	}
+
+	/**
+	 * Get the next piece.
+	 * @return the type of the next piece, or -1 if there are no more
+	 * @throws IllegalStateException if the file has a piece that
+	 * isn't a type, 0-6
+	 */
+	public int next() {
+		if( position >= count ) {
+			return -1;
+		}
+		//the two bytes holding the piece
+		long bit = 3 * position++;
+		int index = HEADER + (int) (bit >>> 3);
+		int bits = buffer.get(index) & 0xff;
+		if( index+1 < buffer.limit() ) {
+			bits |= (buffer.get(index+1) & 0xff) << 8;
+		}
+		int piece = (bits >>> (bit & 7)) & 7;
+		if( piece >= PieceShape.SHAPES.length ) {
+			throw new IllegalStateException("piece file is corrupt: piece " + (position-1) + " is " + piece);
+		}
+		return piece;
+	}
+
+	/**
+	 * Start again from the first piece.
+	 */
+	public void rewind() {
+		position = 0;
+	}
+
+	/**
+	 * Write pieces from another source to a file in the
+	 * format read by this class.
+	 * @param file the file to write
+	 * @param source the source of the pieces
+	 * @param count the number of pieces to write, at most MAX_PIECES
+	 * @throws IllegalArgumentException if the source runs out or gives
+	 * a piece that isn't a type, 0-6
+	 */
+	public static void write(Path file, PieceSource source, long count) throws IOException {
+		if( count < 0 || count > MAX_PIECES ) {
+			throw new IllegalArgumentException("a piece file holds 0 to " + MAX_PIECES + " pieces: " + count);
+		}
+		long size = HEADER + (3*count + 7) / 8;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			out.order(ByteOrder.LITTLE_ENDIAN);
+			out.putLong(0, count);
+			
+			//pack the pieces, a byte at a time
+			int pending = 0;
+			int pendingBits = 0;
+			int index = HEADER;
+			for(long i=0; i<count; i++) {
+				int piece = source.next();
+				if( piece < 0 || piece >= PieceShape.SHAPES.length ) {
+					throw new IllegalArgumentException(piece < 0 ? "source ran out after " + i + " of " + count + " pieces"
+							: "not a piece type: " + piece);
+				}
+				pending |= piece << pendingBits;
+				pendingBits += 3;
+				if( pendingBits >= 8 ) {
+					out.put(index++, (byte) pending);
+					pending >>>= 8;
+					pendingBits -= 8;
+				}
+			}
+			if( pendingBits > 0 ) {
+				out.put(index, (byte) pending);
+			}
+			out.force();
+		}
+	}
+
+	/**
+	 * Write pieces to a file in the format read by this class.
+	 * @param file the file to write
+	 * @param pieces the pieces
+	 */
+	public static void write(Path file, int[] pieces) throws IOException {
+		int[] next = {0};
+		write(file, () -> pieces[next[0]++], pieces.length);
+	}
+}
@@ -0,0 +1,332 @@
+package tetris;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for the engine and the live bot.
+ *
+ * Each thread records into its own Recorder, which only that thread
+ * writes to, so recording never waits on another thread. Reading the
+ * metrics (snapshot) adds up every recorder. The recorders of threads
+ * that have finished are folded into one retired total and dropped,
+ * so pools that keep making new threads don't keep their recorders.
+ *
+ * Latencies go in histograms with eight buckets for each power of
+ * two, so percentiles are within an eighth of the true value.
+ *
+ * Run with -Dtetris.metrics=false to turn recording off; the JIT
+ * then drops it from the hot paths.
+ */
+public class Metrics {
+
+	/**
+	 * The things that are counted.
+	 */
+	public enum Counter {
+		/** pieces placed */
+		PIECES,
+		/** lines cleared */
+		LINES,
+		/** games played */
+		GAMES,
+		/** moves scored while looking for the best move */
+		CANDIDATES,
+		/** moves found in a DecisionCache */
+		CACHE_HITS,
+		/** placements searched for by Reachability */
+		REACH_SEARCHES,
+		/** placements found again by Reachability without searching */
+		REACH_HITS
+	}
+
+	/**
+	 * The things that are timed.
+	 */
+	public enum Timer {
+		/** finding and making a move, in Tetris.makeMove */
+		MAKE_MOVE,
+		/** the screen capture and color lookups that found a new piece */
+		DETECTION,
+		/** sending a key press or release */
+		KEY
+	}
+
+	/**
+	 * Whether metrics are recorded.
+	 */
+	public final static boolean ENABLED = !"false".equals(System.getProperty("tetris.metrics"));
+	/**
+	 * The number of histogram buckets: eight for values below
+	 * eight, then eight for each power of two up to 2^62.
+	 */
+	final static int BUCKETS = 61*8;
+
+	/**
+	 * The metrics of one thread. Only that thread writes to
+	 * it, so values are updated without atomic operations and
+	 * published with lazySet for readers.
+	 */
+	static class Recorder {
+		/**
+		 * The thread that records into it, or null for the
+		 * retired total. The thread isn't kept alive by this.
+		 */
+		final WeakReference<Thread> owner;
+		final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+		final AtomicLongArray[] buckets = new AtomicLongArray[Timer.values().length];
+		final AtomicLongArray sums = new AtomicLongArray(Timer.values().length);
+		final AtomicLongArray maxes = new AtomicLongArray(Timer.values().length);
+
+		Recorder(Thread owner) {
+			this.owner = owner == null ? null : new WeakReference<Thread>(owner);
+			for(int t=0; t<buckets.length; t++) {
+				buckets[t] = new AtomicLongArray(BUCKETS);
+			}
+		}
+
+		/**
+		 * Whether or not its thread has finished, so it
+		 * won't be written to again.
+		 */
+		boolean finished() {
+			Thread thread = owner == null ? null : owner.get();
+			return owner != null && (thread == null || !thread.isAlive());
+		}
+
+		/**
+		 * Add the metrics of another recorder to this one.
+		 * Only used on the retired total, under its lock.
+		 */
+		void add(Recorder other) {
+			for(int c=0; c<counters.length(); c++) {
+				counters.lazySet(c, counters.get(c) + other.counters.get(c));
+			}
+			for(int t=0; t<buckets.length; t++) {
+				for(int b=0; b<BUCKETS; b++) {
+					buckets[t].lazySet(b, buckets[t].get(b) + other.buckets[t].get(b));
+				}
+				sums.lazySet(t, sums.get(t) + other.sums.get(t));
+				maxes.lazySet(t, Math.max(maxes.get(t), other.maxes.get(t)));
+			}
+		}
+
+		void count(Counter counter, long n) {
+			int i = counter.ordinal();
+			counters.lazySet(i, counters.get(i) + n);
+		}
+
+		void record(Timer timer, long nanos) {
+			int t = timer.ordinal();
+			int b = bucket(nanos);
+			buckets[t].lazySet(b, buckets[t].get(b) + 1);
+			sums.lazySet(t, sums.get(t) + nanos);
+			if( nanos > maxes.get(t) ) {
+				maxes.lazySet(t, nanos);
+			}
+		}
+	}
+
+	/**
+	 * The recorder of every thread that has recorded and
+	 * hadn't finished when last checked, and the total of the
+	 * recorders of the threads that had, which is guarded by
+	 * the lock of the list.
+	 */
+	final static List<Recorder> recorders = new CopyOnWriteArrayList<Recorder>();
+	final static Recorder retired = new Recorder(null);
+	/**
+	 * The recorder of each thread.
+	 */
+	final static ThreadLocal<Recorder> recorder = ThreadLocal.withInitial(() -> {
+		Recorder r = new Recorder(Thread.currentThread());
+		synchronized(recorders) {
+			retire();
+			recorders.add(r);
+		}
+		return r;
+	});
+	/**
+	 * When the metrics started, from System.nanoTime.
+	 */
+	final static long START = System.nanoTime();
+
+	/**
+	 * Add to a counter.
+	 * @param counter the counter
+	 * @param n how much to add
+	 */
+	public static void count(Counter counter, long n) {
+		if( ENABLED ) {
+			recorder.get().count(counter, n);
+		}
+	}
+
+	/**
+	 * Record a latency.
+	 * @param timer what was timed
+	 * @param nanos how long it took, in nanoseconds
+	 */
+	public static void record(Timer timer, long nanos) {
+		if( ENABLED ) {
+			recorder.get().record(timer, Math.max(0, nanos));
+		}
+	}
+
+	/**
+	 * Record the time since a start time.
+	 * @param timer what was timed
+	 * @param start when it started, from System.nanoTime
+	 */
+	public static void recordSince(Timer timer, long start) {
+		if( ENABLED ) {
+			recorder.get().record(timer, Math.max(0, System.nanoTime() - start));
+		}
+	}
+
+	/**
+	 * The histogram bucket of a value.
+	 */
+	static int bucket(long value) {
+		if( value < 8 ) {
+			return (int) value;
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		int mantissa = (int) (value >>> (exp - 3)) & 7;
+		return (exp - 2)*8 + mantissa;
+	}
+
+	/**
+	 * The highest value that goes in a histogram bucket.
+	 */
+	static long bucketTop(int bucket) {
+		if( bucket < 8 ) {
+			return bucket;
+		}
+		int exp = bucket/8 + 2;
+		long mantissa = 8 + bucket%8;
+		return ((mantissa + 1) << (exp - 3)) - 1;
+	}
+
+	/**
+	 * Fold the recorders of finished threads into the retired
+	 * total, and drop them. Must be called with the lock of
+	 * the list of recorders.
+	 */
+	static void retire() {
+		for(Recorder r: recorders) {
+			if( r.finished() ) {
+				retired.add(r);
+				recorders.remove(r);
+			}
+		}
+	}
+
+	/**
+	 * Add up the metrics of every thread.
+	 * @return the metrics so far
+	 */
+	public static MetricsSnapshot snapshot() {
+		long[] counters = new long[Counter.values().length];
+		long[][] buckets = new long[Timer.values().length][BUCKETS];
+		long[] sums = new long[Timer.values().length];
+		long[] maxes = new long[Timer.values().length];
+
+		synchronized(recorders) {
+			retire();
+			add(retired, counters, buckets, sums, maxes);
+			for(Recorder r: recorders) {
+				add(r, counters, buckets, sums, maxes);
+			}
+		}
+
+		MetricsSnapshot.Latency[] latencies = new MetricsSnapshot.Latency[buckets.length];
+		for(int t=0; t<buckets.length; t++) {
+			latencies[t] = new MetricsSnapshot.Latency(buckets[t], sums[t], maxes[t]);
+		}
+		return new MetricsSnapshot(System.nanoTime() - START, counters, latencies);
+	}
+
+	/**
+	 * Add the metrics of a recorder to totals.
+	 */
+	static void add(Recorder r, long[] counters, long[][] buckets, long[] sums, long[] maxes) {
+		for(int c=0; c<counters.length; c++) {
+			counters[c] += r.counters.get(c);
+		}
+		for(int t=0; t<buckets.length; t++) {
+			for(int b=0; b<BUCKETS; b++) {
+				buckets[t][b] += r.buckets[t].get(b);
+			}
+			sums[t] += r.sums.get(t);
+			maxes[t] = Math.max(maxes[t], r.maxes.get(t));
+		}
+	}
+
+	/**
+	 * Take a snapshot every so often, on a background thread.
+	 * @param period the time between snapshots
+	 * @param unit the unit of the period
+	 * @param consumer what to do with each snapshot, such as print it
+	 * @return the executor taking the snapshots, to shut down when done
+	 */
+	public static ScheduledExecutorService report(long period, TimeUnit unit, Consumer<MetricsSnapshot> consumer) {
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleAtFixedRate(() -> consumer.accept(snapshot()), period, period, unit);
+		return executor;
+	}
+
+	/**
+	 * Register the metrics with the platform MBean server, as
+	 * tetris:type=Metrics, so they can be read with JConsole
+	 * and the like. Registering again does nothing.
+	 */
+	public static synchronized void registerMBean() {
+		try {
+			ObjectName name = new ObjectName("tetris:type=Metrics");
+			if( !ManagementFactory.getPlatformMBeanServer().isRegistered(name) ) {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), name);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("could not register metrics", e);
+		}
+	}
+
+	/**
+	 * The MBean, reading a new snapshot for each attribute.
+	 */
+	static class Bean implements MetricsMXBean {
+		public long getPieces() { return snapshot().count(Counter.PIECES); }
+		public long getLines() { return snapshot().count(Counter.LINES); }
+		public long getGames() { return snapshot().count(Counter.GAMES); }
+		public long getCandidates() { return snapshot().count(Counter.CANDIDATES); }
+		public long getCacheHits() { return snapshot().count(Counter.CACHE_HITS); }
+		public long getReachSearches() { return snapshot().count(Counter.REACH_SEARCHES); }
+		public long getReachHits() { return snapshot().count(Counter.REACH_HITS); }
+		public double getPiecesPerSecond() { return snapshot().perSecond(Counter.PIECES); }
+		public double getMakeMoveMeanMicros() { return snapshot().latency(Timer.MAKE_MOVE).meanMicros(); }
+		public double getMakeMoveP99Micros() { return snapshot().latency(Timer.MAKE_MOVE).percentileMicros(99); }
+		public double getMakeMoveMaxMicros() { return snapshot().latency(Timer.MAKE_MOVE).maxMicros(); }
+		public double getDetectionMeanMicros() { return snapshot().latency(Timer.DETECTION).meanMicros(); }
+		public double getDetectionP99Micros() { return snapshot().latency(Timer.DETECTION).percentileMicros(99); }
+		public double getDetectionMaxMicros() { return snapshot().latency(Timer.DETECTION).maxMicros(); }
+		public double getKeyMeanMicros() { return snapshot().latency(Timer.KEY).meanMicros(); }
+		public double getKeyP99Micros() { return snapshot().latency(Timer.KEY).percentileMicros(99); }
+		public double getKeyMaxMicros() { return snapshot().latency(Timer.KEY).maxMicros(); }
+		public String getSummary() { return snapshot().toString(); }
+	}
+}
@@ -0,0 +1,27 @@
+package tetris;
+
+/**
+ * The metrics as seen over JMX, registered by
+ * Metrics.registerMBean as tetris:type=Metrics.
+ * Latencies are in microseconds.
+ */
+public interface MetricsMXBean {
+	long getPieces();
+	long getLines();
+	long getGames();
+	long getCandidates();
+	long getCacheHits();
+	long getReachSearches();
+	long getReachHits();
+	double getPiecesPerSecond();
+	double getMakeMoveMeanMicros();
+	double getMakeMoveP99Micros();
+	double getMakeMoveMaxMicros();
+	double getDetectionMeanMicros();
+	double getDetectionP99Micros();
+	double getDetectionMaxMicros();
+	double getKeyMeanMicros();
+	double getKeyP99Micros();
+	double getKeyMaxMicros();
+	String getSummary();
+}
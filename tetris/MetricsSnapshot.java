@@ -0,0 +1,148 @@
+package tetris;
+
+/**
+ * The metrics of every thread, added up at one point in time.
+ * Snapshots don't change, so two can be compared to see what
+ * happened between them.
+ */
+public class MetricsSnapshot {
+
+	/**
+	 * A latency histogram, added up over every thread.
+	 */
+	public static class Latency {
+		/** the number of values in each bucket */
+		final long[] buckets;
+		/** the number of values, their sum and the largest, in nanoseconds */
+		final long count;
+		final long sum;
+		final long max;
+
+		Latency(long[] buckets, long sum, long max) {
+			this.buckets = buckets;
+			long count = 0;
+			for(long b: buckets) {
+				count += b;
+			}
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/**
+		 * The number of values recorded.
+		 */
+		public long count() {
+			return count;
+		}
+
+		/**
+		 * The mean value, in microseconds.
+		 */
+		public double meanMicros() {
+			return count == 0 ? 0 : sum / 1000.0 / count;
+		}
+
+		/**
+		 * The largest value, in microseconds.
+		 */
+		public double maxMicros() {
+			return max / 1000.0;
+		}
+
+		/**
+		 * A percentile of the values, in microseconds. This is
+		 * the top of the bucket it falls in, so it is at most an
+		 * eighth over, and never more than the largest value.
+		 * @param percentile the percentile, such as 99
+		 * @return the percentile
+		 */
+		public double percentileMicros(double percentile) {
+			if( count == 0 ) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(count * percentile / 100);
+			long seen = 0;
+			for(int b=0; b<buckets.length; b++) {
+				seen += buckets[b];
+				if( seen >= Math.max(rank, 1) ) {
+					return Math.min(Metrics.bucketTop(b), max) / 1000.0;
+				}
+			}
+			return maxMicros();
+		}
+
+		public String toString() {
+			return String.format("%d, mean %.1f us, p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+					count, meanMicros(), percentileMicros(50), percentileMicros(99), percentileMicros(99.9), maxMicros());
+		}
+	}
+
+	/**
+	 * How long the metrics had been running, in nanoseconds.
+	 */
+	final long nanos;
+	/**
+	 * The value of each counter, by Metrics.Counter.
+	 */
+	final long[] counters;
+	/**
+	 * The histogram of each timer, by Metrics.Timer.
+	 */
+	final Latency[] latencies;
+
+	MetricsSnapshot(long nanos, long[] counters, Latency[] latencies) {
+		this.nanos = nanos;
+		this.counters = counters;
+		this.latencies = latencies;
+	}
+
+	/**
+	 * The value of a counter.
+	 */
+	public long count(Metrics.Counter counter) {
+		return counters[counter.ordinal()];
+	}
+
+	/**
+	 * The mean rate of a counter per second, since the
+	 * metrics started.
+	 */
+	public double perSecond(Metrics.Counter counter) {
+		return nanos == 0 ? 0 : count(counter) * 1e9 / nanos;
+	}
+
+	/**
+	 * The rate of a counter per second, between an earlier
+	 * snapshot and this one.
+	 * @param counter the counter
+	 * @param earlier the earlier snapshot
+	 * @return the rate
+	 */
+	public double perSecond(Metrics.Counter counter, MetricsSnapshot earlier) {
+		long nanos = this.nanos - earlier.nanos;
+		return nanos <= 0 ? 0 : (count(counter) - earlier.count(counter)) * 1e9 / nanos;
+	}
+
+	/**
+	 * The histogram of a timer.
+	 */
+	public Latency latency(Metrics.Timer timer) {
+		return latencies[timer.ordinal()];
+	}
+
+	/**
+	 * A string with every counter, with its rate, and
+	 * every histogram.
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for(Metrics.Counter counter: Metrics.Counter.values()) {
+			sb.append(String.format("%s: %d (%.1f/sec)%n", counter.name().toLowerCase(), count(counter), perSecond(counter)));
+		}
+		for(Metrics.Timer timer: Metrics.Timer.values()) {
+			sb.append(timer.name().toLowerCase()).append(": ").append(latency(timer)).append(String.format("%n"));
+		}
+		return sb.toString();
+	}
+}
@@ -8,98 +8,20 @@ import java.awt.Point;
  */
 public class Piece {
 
-	/**
-	 * This is a huge matrix of all of the possible
-	 * pieces and their rotations. This is used in
-	 * the constructor to create the appropriate piece.
-	 * 
-	 * A given entry of this matrix contains all of the
-	 * possible rotations of a given piece. Moreover,
-	 * the entries within this are in order of 90 degree
-	 * clockwise rotations.
-	 * 
-	 * So, once we have an entry, we can iterate through
-	 * the rotations by just incrementing the index.
-	 * 
-	 * The point entries themselves relate to the relative
-	 * position of a point to the center of the piece.
-	 */
-	Point[][][] allRotations=  {
-					{
-						//Red (Z)
-						{new Point(1, 0), new Point(0, 0), new Point(0,1), new Point(-1,1)},
-						{new Point(0, -1), new Point(0, 0), new Point(1, 0), new Point(1, 1)},
-						{new Point(-1, 0), new Point(0, 0), new Point(0, -1), new Point(1, -1)},
-						{new Point(0, 1), new Point(0, 0), new Point(-1, 0), new Point(-1, -1)}
-					},
-					
-					{
-						//Blue (L)
-						{new Point(-1, 0), new Point(0, 0), new Point(-1,1), new Point(1,0)},
-						{new Point(0, 1), new Point(0, 0), new Point(1, 1), new Point(0, -1)},
-						{new Point(1, 0), new Point(0, 0), new Point(-1, 0), new Point(1, -1)},
-						{new Point(0, -1), new Point(0, 0), new Point(-1, -1), new Point(0, 1)}
-					},
-					
-					{
-						//Yellow (O)
-						{new Point(0, 0), new Point(1, 0), new Point(1, 1), new Point(0,1)},
-						{new Point(0, 0), new Point(1, 0), new Point(1, 1), new Point(0,1)},
-						{new Point(0, 0), new Point(1, 0), new Point(1, 1), new Point(0,1)},
-						{new Point(0, 0), new Point(1, 0), new Point(1, 1), new Point(0,1)}
-					},
-					
-					{
-						//Purple (T)
-						{new Point(0, 0), new Point(-1, 0), new Point(1, 0), new Point(0,1)},
-						{new Point(0, 0), new Point(0, -1), new Point(1, 0), new Point(0,1)},
-						{new Point(0, 0), new Point(-1, 0), new Point(1, 0), new Point(0, -1)},
-						{new Point(0, 0), new Point(0, 1), new Point(0, -1), new Point(-1,0)}
-					},
-					
-					{
-						//Green(Z)
-						{new Point(-1, 0), new Point(0, 0), new Point(0,1), new Point(1,1)},
-						{new Point(0, 1), new Point(0, 0), new Point(1, 0), new Point(1, -1)},
-						{new Point(1, 0), new Point(0, 0), new Point(0, -1), new Point(-1, -1)},
-						{new Point(0, -1), new Point(0, 0), new Point(-1, 0), new Point(-1, 1)}	
-					},
-					
-					{
-						//Orange (L)
-						{new Point(1, 0), new Point(0, 0), new Point(1,1), new Point(-1,0)},
-						{new Point(0, -1), new Point(0, 0), new Point(1, -1), new Point(0, 1)},
-						{new Point(-1, 0), new Point(0, 0), new Point(1, 0), new Point(-1, -1)},
-						{new Point(0, 1), new Point(0, 0), new Point(-1, 1), new Point(0, -1)}
-					},
-					
-					{
-						//light blue (I)
-						{new Point(-1, 0), new Point(0, 0), new Point(1, 0), new Point(2, 0)},
-						{new Point(1, -1), new Point(1, 0), new Point(1, 1), new Point(1, 2)},
-						{new Point(-1, 1), new Point(0, 1), new Point(1, 1), new Point(2, 1)},
-						{new Point(0, -1), new Point(0, 0), new Point(0, 1), new Point(0, 2)}
-					}
-				};
-	
-	
 	/**
 	 * Some variables the piece uses.
 	 */
 	
 	/** The center is the center point of the piece. */
 	Point center;	
-	/** The rotations array is the array of all of
-	 * the possible rotations of THIS specific piece.*/
-	Point[][] rotations;
 	/** The currentRotation variable stores the index
 	 * of the piece formation currently being used. */
 	int currentRotation;
-	/** The points array just stores the current
-	 * configuration of the points. This is equivalent
-	 * to taking the currentRotation index element of
-	 * the rotations array. */
-	Point[] points;
+	/** The shape stores the current configuration of
+	 * the points. This is the entry of the static
+	 * PieceShape catalog for this type and the
+	 * currentRotation. */
+	PieceShape shape;
 	/**  The type variable determines what kind of piece
 	 * this piece is. It can be an integer from 0-6. The
 	 * numbers correspond to pieces as follows: 
@@ -111,6 +33,12 @@ public class Piece {
 	 * Constants for the AI scoring algorithm
 	 */
 	double[] AI_CONSTANTS;
+	/**
+	 * The size of the board the piece moves on, for
+	 * isOnBoard(). Tetris sets it to the size of its board.
+	 */
+	int boardWidth = Tetris.BOARD_DIMENSIONS.width;
+	int boardHeight = Tetris.BOARD_DIMENSIONS.height;
 
 	/**
 	 * The constructor for the piece. It takes in a piece type as
@@ -121,18 +49,17 @@ public class Piece {
 	 * @param center the center of the piece as a Point
 	 */
 	public Piece(int type, Point center) {
-		//set the rotations array and the currentRotation
-		Point[][] temp = this.allRotations[type];
-		this.rotations = temp;
+		//set the currentRotation
 		this.currentRotation = 0;
 		
-		//set the points array
-		this.points = rotations[this.currentRotation];
+		//set the shape from the catalog
+		this.shape = PieceShape.get(type, this.currentRotation);
 
 		//set the type of the piece
 		this.type = type;
-		//set the center of the piece
-		this.center = center;
+		//set the center of the piece, copying it so that
+		//moving the piece never moves the caller's point
+		this.center = new Point(center);
 		//set the default AI_constants
 		double[] tempArray = {2.0,3.0,5.0,10.0};
 		this.AI_CONSTANTS = tempArray;
@@ -150,15 +77,41 @@ public class Piece {
 		
 	}
 	
+	/**
+	 * Turn this piece into a fresh piece of the given type, in its
+	 * first rotation, centered at (x, y). This lets a single Piece
+	 * be reused instead of creating a new one.
+	 * 
+	 * @param type the new type of the piece
+	 * @param x the x coordinate of the new center
+	 * @param y the y coordinate of the new center
+	 */
+	public void reset(int type, int x, int y) {
+		this.type = type;
+		this.currentRotation = 0;
+		this.shape = PieceShape.get(type, this.currentRotation);
+		this.center.setLocation(x, y);
+	}
+	
+	/**
+	 * Set the size of the board the piece moves on.
+	 * @param width the number of columns
+	 * @param height the number of rows
+	 */
+	public void setBoardSize(int width, int height) {
+		this.boardWidth = width;
+		this.boardHeight = height;
+	}
+	
 	/**
 	 * A method to determine whether or not the current piece is
-	 * on the Tetris board. It grabs the dimensions of the board from
-	 * the Tetris class. Note that we subtract some vertical buffer in
+	 * on the Tetris board. It uses the size of the board set with
+	 * setBoardSize (the default Tetris board if not set). Note that we subtract some vertical buffer in
 	 * the check because the actual board has a little bit higher height
 	 * so as to  handle rotations when the piece is at the top of the board.
 	 * 
-	 * The method goes through each point of the piece and makes
-	 * sure it is within the dimensions.
+	 * The method checks the extent of the piece's shape against
+	 * the dimensions.
 	 * 
 	 * FIXME removed buffer, add to doc
 	 * FIXME update doc for overloading
@@ -166,29 +119,12 @@ public class Piece {
 	 * @return whether or not this current piece is completely on the board, as a boolean
 	 */
 	public boolean isOnBoard() {
-		return this.isOnBoard(Tetris.BOARD_DIMENSIONS.width, Tetris.BOARD_DIMENSIONS.height);
+		return this.isOnBoard(boardWidth, boardHeight);
 	}
 	public boolean isOnBoard(int DIM_X, int DIM_Y) {
-		//store whether or not it is on the board
-		boolean answer = true;
-		//go through each point, breaking if answer is false
-		for(int i=0; i<4 && answer; i++) {
-			//store the actual x,y point of the piece.
-			//note we have to add the points x,y to the center
-			//for this.
-			int pointX = this.center.x + points[i].x;
-			int pointY = this.center.y + points[i].y;
-		
-			//perform check
-			if( (pointX >= 0 && pointX < DIM_X) &&
-			    (pointY >= 0 && pointY < DIM_Y) ){
-				//point is on board
-			} else {
-				answer = false;
-			}
-		}
-		//return the result
-		return answer;
+		//the piece is on the board if its corners are
+		return this.center.x + shape.minX >= 0 && this.center.x + shape.maxX < DIM_X &&
+		       this.center.y + shape.minY >= 0 && this.center.y + shape.maxY < DIM_Y;
 	}
 	
 	/**
@@ -265,8 +201,8 @@ public class Piece {
 	public void rotate() {
 		//change the rotation
 		this.currentRotation = (this.currentRotation +1) % 4;
-		//change the current points to correspond to the rotation
-		this.points = this.rotations[currentRotation];		
+		//change the shape to correspond to the rotation
+		this.shape = PieceShape.get(type, currentRotation);		
 	}
 	
 	/**
@@ -278,8 +214,8 @@ public class Piece {
 	public void rotateBy(int i) {
 		//change the rotation
 		this.currentRotation = (this.currentRotation +i) % 4;
-		//change the current points to correspond to the rotation
-		this.points = this.rotations[currentRotation];		
+		//change the shape to correspond to the rotation
+		this.shape = PieceShape.get(type, currentRotation);		
 	}
 	
 	/**
@@ -289,8 +225,19 @@ public class Piece {
 	public void rotateTo(int i) {
 		//change the rotation
 		this.currentRotation = (i) % 4;
-		//change the current points to correspond to the rotation
-		this.points = this.rotations[currentRotation];		
+		//change the shape to correspond to the rotation
+		this.shape = PieceShape.get(type, currentRotation);		
+	}
+	
+	/**
+	 * Whether or not the piece, at its current location, overlaps
+	 * any block on the given board. The piece must be on the board.
+	 * 
+	 * @param board the board to check against
+	 * @return true if the piece collides with a block of the board
+	 */
+	public boolean collides(Board board) {
+		return board.collides(shape.rowMasks, this.center.x + shape.minX, this.center.y + shape.minY);
 	}
 	
 	/**
@@ -298,40 +245,46 @@ public class Piece {
 	 * this method does not actually store the piece on the board, just drops
 	 * it down to the location it would be.
 	 * 
-	 * @param board the board to drop the piece on; a 2-dimensional array of ints
-	 * with entries as 0 or 1, where 0 means empty and 1 means has a block.
+	 * Rather than stepping the piece down a row at a time, this finds,
+	 * for each column of the piece, the highest block below the bottom
+	 * contour of the piece, and lands the piece on the highest of these.
+	 * That block is the top of the column unless the column has a block
+	 * above the piece, so it is normally just the column height.
+	 * As before, a piece that is off the board or collides where it is
+	 * ends up one row above where it started.
+	 * 
+	 * @param board the board to drop the piece on
 	 */
-	public void drop(int[][] board) {
-		//has the piece collided with any other points yet?
-		boolean noCollisions = true;
+	public void drop(Board board) {
+		//a piece that is off the board or already collides can't move down
+		if( !this.isOnBoard(board.width, board.height) || this.collides(board) ) {
+			this.center.y++;
+			return;
+		}
 		
-		//while we have no collisions and the piece is still on the board,
-		//drop it down
-		while( noCollisions && this.isOnBoard() ) {
-
-			//check each piece to make sure there are no collisions
-			for(int i=0; i<4 && noCollisions; i++) {
-				//store the absolute coordinates of the point
-				int pointX = this.center.x + points[i].x;
-				int pointY = this.center.y + points[i].y;
-				
-				//if there is a collision, note this
-				if( board[pointY][pointX] == 1) {
-					//System.out.println("hit collision");
-					noCollisions =false;
-					break;
+		//the piece can at most fall to the bottom of the board
+		int landing = -shape.minY;
+		
+		for(int c=0; c<shape.bottom.length; c++) {
+			int x = this.center.x + shape.minX + c;
+			
+			//find the highest block below the piece in this column.
+			int lowest = this.center.y + shape.bottom[c];
+			int y = board.heights[x] - 1;
+			if( y >= lowest ) {
+				//the column reaches over the piece, so look under it.
+				//the points of the column are all empty, so start under them
+				y = lowest - 1;
+				while( y >= 0 && !board.isFilled(x, y) ) {
+					y--;
 				}
 			}
 			
-			//if there were no collisions, move down
-			if( noCollisions ) {
-				this.center.y--; //move down
-			}
+			//the piece can fall until this column rests on that block
+			landing = Math.max(landing, y + 1 - shape.bottom[c]);
 		}
-		//coming out of the loop, there must have been
-		//a collision or the piece must be below the board.
-		//so, we move it up.
-		this.center.y++;
+		
+		this.center.y = landing;
 	}
 	
 	/**
@@ -345,51 +298,66 @@ public class Piece {
 	 * 		-the neighbor blocks of the piece
 	 * 		-the number of tetrises caused by the piece
 	 * 
-	 * @param board The board to perform the calculations on. Should be a 2-dim array of 0's and 1's.
+	 * @param board The board to perform the calculations on.
 	 * @return The double corresponding to the score.
 	 */
-	public double score(int[][] board) {
+	public double score(Board board) {
+		return score(highestPiece(board), whitespace(board), neighborPoints(board), tetrises(board));
+	}
+	
+	/**
+	 * Calculate the score of the piece from the parts of the score,
+	 * which have been worked out already. The height part comes
+	 * from the highest block of the board and the center of this
+	 * piece.
+	 * 
+	 * @param highestPiece the highest block of the board, from highestPiece
+	 * @param whitespace the whitespace below the piece, from whitespace
+	 * @param neighborPoints the neighbor score, from neighborPoints
+	 * @param tetrises the tetrises caused by the piece, from tetrises
+	 * @return The double corresponding to the score.
+	 */
+	public double score(int highestPiece, int whitespace, double neighborPoints, int tetrises) {
 		//store the initial score
 		double score=0;
-
-		/*
-		 * Now we will calculate the parts of the score.
-		 * The first is the neighbor point score.
-		 *
-		 * We go through each of the points of the piece
-		 * and 'score' its neighbors (left, right, down).
-		 */
-		double neighborPoints = 0;
-	
-		for(Point point: points) {
-			int pointx= this.center.x + point.x;
-			int pointy= this.center.y + point.y;
-		
-			//System.out.println("coutn: "+ count);
-			neighborPoints += scorePoint(board, new Point(pointx+1, pointy));
-			neighborPoints += scorePoint(board, new Point(pointx-1, pointy));
-			neighborPoints += scorePoint(board, new Point(pointx, pointy-1));
-		}
 		
-		//store the number of tetrises caused by dropping the piece
-		int tetrises = tetrises(board);
-		//find the highest block of the board, and subtract the center of this piece
-		int highestPiece = highestPiece(board);
+		//subtract the center of this piece from the highest block
 		int heightScore = (highestPiece == 0 ? 0 : (highestPiece - this.center.y));
 		
 		//now calculate the score
 		//TODO need to abstract these constants
 		score += this.AI_CONSTANTS[0] * heightScore;
-		score -= this.AI_CONSTANTS[1] * whitespace(board);
+		score -= this.AI_CONSTANTS[1] * whitespace;
 		score += this.AI_CONSTANTS[2] * neighborPoints;
 		score += this.AI_CONSTANTS[3] * tetrises;
-		
-		
 
 		//return the score
 		return score;
 	}
 	
+	/**
+	 * Calculate the neighbor point score of the piece.
+	 * We go through each of the points of the piece
+	 * and 'score' its neighbors (left, right, down).
+	 * 
+	 * @param board the board to calculate the result on
+	 * @return the sum of the scores of the neighbors of each point
+	 */
+	public double neighborPoints(Board board) {
+		double neighborPoints = 0;
+	
+		for(int i=0; i<shape.dx.length; i++) {
+			int pointx= this.center.x + shape.dx[i];
+			int pointy= this.center.y + shape.dy[i];
+		
+			neighborPoints += scorePoint(board, pointx+1, pointy);
+			neighborPoints += scorePoint(board, pointx-1, pointy);
+			neighborPoints += scorePoint(board, pointx, pointy-1);
+		}
+		
+		return neighborPoints;
+	}
+	
 	/**
 	 * Score a specific point. If the point entry is empty, then score 0. If has a block,
 	 * score 1. If it is below the board, score .9, and if it is on the sides of the board,
@@ -399,15 +367,28 @@ public class Piece {
 	 * @param point The point to score
 	 * @return the points score, calculated as above
 	 */
-	public double scorePoint(int[][] board, Point point) {
+	public double scorePoint(Board board, Point point) {
+		return scorePoint(board, point.x, point.y);
+	}
+	
+	/**
+	 * Score a specific point, given by its coordinates. See
+	 * scorePoint(Board, Point).
+	 *  
+	 * @param board The board to score the point in.
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @return the points score
+	 */
+	public double scorePoint(Board board, int x, int y) {
 		//score 0 or 1, depending on boards contents
-		if( point.x >=0 && point.x < board[0].length && point.y >= 0 && point.y < board.length ) {
-			return board[point.y][point.x]; // 0 or 1
+		if( x >=0 && x < board.width && y >= 0 && y < board.height ) {
+			return board.isFilled(x, y) ? 1 : 0;
 		//if not on board but below board, return .9
-		} else if (point.y == -1){
+		} else if (y == -1){
 			return .9;
 		//if not on board by on side, then return .5
-		} else if (point.x == -1 || point.x == board[0].length ) {
+		} else if (x == -1 || x == board.width ) {
 			return .5;
 		//otherwise, return 0
 		} else {
@@ -422,51 +403,44 @@ public class Piece {
 	 * @param board the board to calculate the result on
 	 * @return the number of empty squares on the board below the piece
 	 */
-	public int whitespace(int[][] board) {
+	public int whitespace(Board board) {
 		//the counter for whitespace
 		int counter=0;
 	
+		//calculate whitespace
+		if( ! this.isOnBoard(board.width, board.height) ) {
+			return counter;
+		}
+		
 		/*
-		 * for each point, we only want to calculate it
-		 * if it has a unique X value from all other pieces
-		 * so we don't overcount whitespace.
-		 * 
-		 * So only count unique points. When we do this,
-		 * then go through each square below the point
-		 * and sum up the white space, stopping if we hit
-		 * a piece that is full.
+		 * We only count whitespace under the lowest point
+		 * of each column of the piece, so we don't overcount
+		 * it. These points are the bottom contour of the shape.
 		 * 
+		 * Go through each square below the point and sum up
+		 * the white space, stopping if we hit a piece that is
+		 * full. Note the point itself is not on the board yet,
+		 * so it counts as whitespace too.
 		 */
-		for(Point point:points) {
-			//if the piece is unique or not
-			boolean dontCount = false;
-		
-			//see if piece is unique
-			for(Point point2:points) {
-				if( ! point.equals(point2) ) {
-					if( point2.x == point.x && point2.y < point.y ) {
-						dontCount = true;
-					}
-				}			
+		for(int c=0; c<shape.bottom.length; c++) {
+			//get absolute coords
+			int pointx = this.center.x + shape.minX + c;
+			int pointy = this.center.y + shape.bottom[c];
+			
+			//if the column is below the point, everything down
+			//to the top of the column is whitespace
+			if( board.heights[pointx] <= pointy ) {
+				counter += pointy - board.heights[pointx] + 1;
+				continue;
 			}
 			
-			//if piece is unique, calculate whitespace
-			if( ! dontCount ) {
-				//get absolute coords
-				int pointx = this.center.x + point.x;
-				int pointy = this.center.y + point.y;
-				
-				//calculate whitespace
-				if( this.isOnBoard() ) {
-					for(int i=pointy; i>=0; i--) {
-						//whitespace here
-						if( board[i][pointx] == 0 ) {
-							counter ++;
-						//no whitespace, stop
-						} else {
-							break;
-						}
-					}
+			for(int i=pointy; i>=0; i--) {
+				//whitespace here
+				if( ! board.isFilled(pointx, i) ) {
+					counter ++;
+				//no whitespace, stop
+				} else {
+					break;
 				}
 			}
 		}
@@ -481,43 +455,21 @@ public class Piece {
 	 * @param board the input board
 	 * @return how many tetrises are created by adding the piece to the board
 	 */
-	public int tetrises(int[][] board) {
+	public int tetrises(Board board) {
 		//the count of the number of tetrises
 		int numTetrises=0;
 	
-		/*
-		 * We need to create a new board with the same
-		 * values as board so we can add our piece to
-		 * it without modifying the original board.
-		 */
-		int[][] copyBoard = new int[board.length][board[0].length];
+		//the rows of our piece, which we add to the
+		//rows of the board as we go instead of copying it
+		int[] masks = shape.rowMasks;
+		int shift = this.center.x + shape.minX;
+		int bottom = this.center.y + shape.minY;
 		
-		for(int i=0; i<board.length; i++) {
-			for(int j=0; j<board[0].length; j++) {
-				copyBoard[i][j]=board[i][j];
-			}
-		}
-		
-		//add our piece to the copy board
-		for(Point point: points) {
-			int pointX = this.center.x + point.x;
-			int pointY = this.center.y + point.y;
-			copyBoard[pointY][pointX]=1;
-		}
-		
-		//go through each row and see if there is a tetris.
-		//do this by summing each row and then seeing if the
-		//sum equals the length of the row
-		for(int i=0; i<copyBoard.length; i++) {
-			//initialize the sum of the row
-			int sum=0;
-			for(int j=0; j<copyBoard[i].length; j++) {
-				if (copyBoard[i][j]==0) break;
-				sum +=copyBoard[i][j];
-			}
-			
-			//if there is a tetris
-			if( sum==board[i].length ) {
+		//go through each row of the piece and see if there is a
+		//tetris. a row is a tetris if every bit of it is set. no
+		//other row can be one, since the board has been tetrisified
+		for(int k=0; k<masks.length; k++) {
+			if( board.isFullWith(masks[k], shift, bottom+k) ) {
 				numTetrises++;
 			}
 		}
@@ -527,24 +479,14 @@ public class Piece {
 	}
 	
 	/**
-	 * Returns the highest non zero entry of the input board.
-	 * @param board the input board, a 2-dim array of 0's and 1's
-	 * @return the y-coordinate of the highest non zero entry of board 
+	 * Returns the highest non empty row of the input board.
+	 * @param board the input board
+	 * @return the y-coordinate of the highest non empty row of board 
 	 */
-	public int highestPiece(int[][] board) {
-		//go through each row, starting from top
-		for(int i=board.length-1; i>=0; i--) {
-			//go through each entry
-			for(int j=0; j<board[i].length; j++) {
-				//if we find a non-zero entry
-				//just return this row, no need to continue
-				if (board[i][j]!=0)
-					return i;
-			}
-		}
-		//if for some reason we didn't find a non-zero element,
-		//just return 0
-		return 0;
+	public int highestPiece(Board board) {
+		//the board keeps the height of its highest column.
+		//if the board is empty, just return 0
+		return board.maxHeight == 0 ? 0 : board.maxHeight - 1;
 	}
 	
 	/**
@@ -553,17 +495,11 @@ public class Piece {
 	 * of the piece is marked on the  board.
 	 * @param board the board to add the piece to
 	 */
-	public void add(int[][] board) {
+	public void add(Board board) {
 		//drop the piece to its appropriate spot
 		this.drop(board);
-		//add each piece to the board
-		for(Point point: points) {
-			//get absolute coordinates
-			int pointX = this.center.x + point.x;
-			int pointY = this.center.y + point.y;
-			//add
-			board[pointY][pointX]=1;
-		}	
+		//add the piece to the board, one row at a time
+		board.add(shape.rowMasks, this.center.x + shape.minX, this.center.y + shape.minY);
 	}
 
 	
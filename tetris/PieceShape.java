@@ -0,0 +1,258 @@
+package tetris;
+
+import java.awt.Point;
+import java.util.Arrays;
+
+/**
+ * A class for the static catalog of piece shapes. There is one
+ * PieceShape for every piece type and rotation, built once when
+ * the class is loaded and shared by every Piece.
+ * 
+ * Besides the offsets of its points from the center of the piece,
+ * a shape stores its extent, its row masks for the Board and its
+ * bottom and top contours, so that pieces never have to work these
+ * out point by point.
+ * 
+ * Shapes are never modified after they are built.
+ */
+public final class PieceShape {
+
+	/**
+	 * This is a huge matrix of all of the possible
+	 * pieces and their rotations. This is used to
+	 * build the catalog of shapes below.
+	 * 
+	 * A given entry of this matrix contains all of the
+	 * possible rotations of a given piece. Moreover,
+	 * the entries within this are in order of 90 degree
+	 * clockwise rotations.
+	 * 
+	 * So, once we have an entry, we can iterate through
+	 * the rotations by just incrementing the index.
+	 * 
+	 * The point entries themselves relate to the relative
+	 * position of a point to the center of the piece.
+	 */
+	static final Point[][][] allRotations=  {
+					{
+						//Red (Z)
+						{new Point(1, 0), new Point(0, 0), new Point(0,1), new Point(-1,1)},
+						{new Point(0, -1), new Point(0, 0), new Point(1, 0), new Point(1, 1)},
+						{new Point(-1, 0), new Point(0, 0), new Point(0, -1), new Point(1, -1)},
+						{new Point(0, 1), new Point(0, 0), new Point(-1, 0), new Point(-1, -1)}
+					},
+					
+					{
+						//Blue (L)
+						{new Point(-1, 0), new Point(0, 0), new Point(-1,1), new Point(1,0)},
+						{new Point(0, 1), new Point(0, 0), new Point(1, 1), new Point(0, -1)},
+						{new Point(1, 0), new Point(0, 0), new Point(-1, 0), new Point(1, -1)},
+						{new Point(0, -1), new Point(0, 0), new Point(-1, -1), new Point(0, 1)}
+					},
+					
+					{
+						//Yellow (O)
+						{new Point(0, 0), new Point(1, 0), new Point(1, 1), new Point(0,1)},
+						{new Point(0, 0), new Point(1, 0), new Point(1, 1), new Point(0,1)},
+						{new Point(0, 0), new Point(1, 0), new Point(1, 1), new Point(0,1)},
+						{new Point(0, 0), new Point(1, 0), new Point(1, 1), new Point(0,1)}
+					},
+					
+					{
+						//Purple (T)
+						{new Point(0, 0), new Point(-1, 0), new Point(1, 0), new Point(0,1)},
+						{new Point(0, 0), new Point(0, -1), new Point(1, 0), new Point(0,1)},
+						{new Point(0, 0), new Point(-1, 0), new Point(1, 0), new Point(0, -1)},
+						{new Point(0, 0), new Point(0, 1), new Point(0, -1), new Point(-1,0)}
+					},
+					
+					{
+						//Green(Z)
+						{new Point(-1, 0), new Point(0, 0), new Point(0,1), new Point(1,1)},
+						{new Point(0, 1), new Point(0, 0), new Point(1, 0), new Point(1, -1)},
+						{new Point(1, 0), new Point(0, 0), new Point(0, -1), new Point(-1, -1)},
+						{new Point(0, -1), new Point(0, 0), new Point(-1, 0), new Point(-1, 1)}	
+					},
+					
+					{
+						//Orange (L)
+						{new Point(1, 0), new Point(0, 0), new Point(1,1), new Point(-1,0)},
+						{new Point(0, -1), new Point(0, 0), new Point(1, -1), new Point(0, 1)},
+						{new Point(-1, 0), new Point(0, 0), new Point(1, 0), new Point(-1, -1)},
+						{new Point(0, 1), new Point(0, 0), new Point(-1, 1), new Point(0, -1)}
+					},
+					
+					{
+						//light blue (I)
+						{new Point(-1, 0), new Point(0, 0), new Point(1, 0), new Point(2, 0)},
+						{new Point(1, -1), new Point(1, 0), new Point(1, 1), new Point(1, 2)},
+						{new Point(-1, 1), new Point(0, 1), new Point(1, 1), new Point(2, 1)},
+						{new Point(0, -1), new Point(0, 0), new Point(0, 1), new Point(0, 2)}
+					}
+				};
+
+	
+	/**
+	 * The catalog itself: SHAPES[type][rotation].
+	 */
+	static final PieceShape[][] SHAPES = new PieceShape[allRotations.length][4];
+	/**
+	 * For each rotation of a piece type, the first rotation of that
+	 * type with the same footprint. For example, the O piece only
+	 * has one footprint, so all of its rotations map to 0.
+	 */
+	static final int[][] CANONICAL_ROTATIONS = new int[allRotations.length][4];
+	/**
+	 * For each piece type, the rotations with distinct footprints,
+	 * in increasing order. These are the only rotations worth trying
+	 * when searching for a move.
+	 */
+	static final int[][] DISTINCT_ROTATIONS = new int[allRotations.length][];
+	/**
+	 * Every rotation, for when all of them need to be tried.
+	 */
+	static final int[] ALL_ROTATIONS = {0, 1, 2, 3};
+
+	static {
+		for(int type=0; type<allRotations.length; type++) {
+			//build each shape
+			for(int rot=0; rot<4; rot++) {
+				SHAPES[type][rot] = new PieceShape(type, rot, allRotations[type][rot]);
+			}
+			
+			//find the first rotation with the same footprint as each rotation
+			int distinct = 0;
+			for(int rot=0; rot<4; rot++) {
+				CANONICAL_ROTATIONS[type][rot] = rot;
+				for(int other=0; other<rot; other++) {
+					if( SHAPES[type][rot].sameFootprint(SHAPES[type][other]) ) {
+						CANONICAL_ROTATIONS[type][rot] = other;
+						break;
+					}
+				}
+				if( CANONICAL_ROTATIONS[type][rot] == rot ) {
+					distinct++;
+				}
+			}
+			
+			//list the distinct rotations
+			DISTINCT_ROTATIONS[type] = new int[distinct];
+			for(int rot=0, i=0; rot<4; rot++) {
+				if( CANONICAL_ROTATIONS[type][rot] == rot ) {
+					DISTINCT_ROTATIONS[type][i++] = rot;
+				}
+			}
+		}
+	}
+
+	/** The piece type and rotation of this shape. */
+	final int type;
+	final int rotation;
+	/**
+	 * The offsets of each point of the shape from the center,
+	 * from the lowest row up and left to right within a row.
+	 */
+	final int[] dx;
+	final int[] dy;
+	/** The extent of the shape, as offsets from the center. */
+	final int minX;
+	final int maxX;
+	final int minY;
+	final int maxY;
+	/**
+	 * The bottom contour: for each column of the shape, starting from
+	 * the column at minX, the y offset of the lowest point in it.
+	 */
+	final int[] bottom;
+	/**
+	 * The top contour: for each column of the shape, the y offset
+	 * of the highest point in it. The points of a column always run
+	 * from bottom to top without gaps.
+	 */
+	final int[] top;
+	/**
+	 * One bitmask per row of the shape, starting from the row at
+	 * minY, where bit 0 is the column at minX. See Board.collides.
+	 */
+	final int[] rowMasks;
+
+	/**
+	 * A constructor for the class. Works out everything
+	 * about the shape from its points.
+	 * @param type the piece type
+	 * @param rotation the rotation
+	 * @param points the points of the shape, relative to the center
+	 */
+	private PieceShape(int type, int rotation, Point[] points) {
+		this.type = type;
+		this.rotation = rotation;
+		
+		//copy the points, sorted by row and then by column,
+		//so that shapes with the same footprint list their
+		//points in the same order
+		Point[] sorted = points.clone();
+		Arrays.sort(sorted, (p, q) -> p.y != q.y ? p.y - q.y : p.x - q.x);
+		
+		//find the extent
+		this.dx = new int[points.length];
+		this.dy = new int[points.length];
+		int minX = sorted[0].x, maxX = sorted[0].x;
+		int minY = sorted[0].y, maxY = sorted[0].y;
+		for(int i=0; i<sorted.length; i++) {
+			dx[i] = sorted[i].x;
+			dy[i] = sorted[i].y;
+			minX = Math.min(minX, dx[i]);
+			maxX = Math.max(maxX, dx[i]);
+			minY = Math.min(minY, dy[i]);
+			maxY = Math.max(maxY, dy[i]);
+		}
+		this.minX = minX;
+		this.maxX = maxX;
+		this.minY = minY;
+		this.maxY = maxY;
+		
+		//find the contours and the row masks
+		this.bottom = new int[maxX - minX + 1];
+		this.top = new int[maxX - minX + 1];
+		this.rowMasks = new int[maxY - minY + 1];
+		for(int c=0; c<bottom.length; c++) {
+			bottom[c] = maxY;
+			top[c] = minY;
+		}
+		for(int i=0; i<dx.length; i++) {
+			int c = dx[i] - minX;
+			bottom[c] = Math.min(bottom[c], dy[i]);
+			top[c] = Math.max(top[c], dy[i]);
+			rowMasks[dy[i] - minY] |= 1 << c;
+		}
+	}
+
+	/**
+	 * Get the shape of a piece type in a given rotation.
+	 * @param type the piece type, 0-6
+	 * @param rotation the rotation, 0-3
+	 * @return the shape
+	 */
+	public static PieceShape get(int type, int rotation) {
+		return SHAPES[type][rotation];
+	}
+
+	/**
+	 * The number of columns the shape covers.
+	 * @return the width of the shape
+	 */
+	public int width() {
+		return maxX - minX + 1;
+	}
+
+	/**
+	 * Whether or not two shapes cover the same squares, up to
+	 * moving one of them. Their row masks are relative to their
+	 * own corners, so this just compares the masks.
+	 * @param other the other shape
+	 * @return true if the shapes have the same footprint
+	 */
+	boolean sameFootprint(PieceShape other) {
+		return Arrays.equals(this.rowMasks, other.rowMasks);
+	}
+}
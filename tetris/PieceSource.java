@@ -0,0 +1,16 @@
+package tetris;
+
+/**
+ * An interface for where the pieces of a game come from.
+ *
+ * Pieces are given by their type, 0-6, as in Piece. A source
+ * that has run out of pieces returns -1, which ends the game.
+ */
+public interface PieceSource {
+
+	/**
+	 * Get the next piece.
+	 * @return the type of the next piece, or -1 if there are no more
+	 */
+	int next();
+}
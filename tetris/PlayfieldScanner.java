@@ -0,0 +1,159 @@
+package tetris;
+
+import java.awt.Rectangle;
+
+/**
+ * A class to read the whole playfield off the screen, so the
+ * bot's model of the board can be checked against the game.
+ *
+ * The screen position of the middle of every square is worked
+ * out once, and a scan reads each of them from one captured
+ * frame into packed rows, laid out the same as Board's. A square is
+ * filled if its color is a piece color. Scanning doesn't
+ * create anything but the frame itself.
+ *
+ * The new piece shows up in the top rows of the playfield, so
+ * the top SPAWN_ROWS rows are not compared with the model.
+ */
+public class PlayfieldScanner {
+
+	/**
+	 * The number of columns and rows of the playfield.
+	 */
+	int columns;
+	int rows;
+	/**
+	 * The number of words in each row, as in Board.
+	 */
+	int words;
+	/**
+	 * The number of rows at the top that are not compared,
+	 * since the new piece may be in them.
+	 */
+	public int SPAWN_ROWS = 2;
+	/**
+	 * The screen coordinates of the middle of each square,
+	 * indexed by y*columns + x, with row 0 at the bottom.
+	 */
+	int[] xs;
+	int[] ys;
+	/**
+	 * The region of the screen covering every square.
+	 */
+	Rectangle region;
+	/**
+	 * The rows read by the last scan, words words each.
+	 */
+	long[] scanned;
+	/**
+	 * The number of scans, and of scans that didn't
+	 * match the model.
+	 */
+	long scans;
+	long mismatches;
+
+	/**
+	 * A constructor for the class.
+	 * @param left the x coordinate of the middle of the bottom left square
+	 * @param bottom the y coordinate of the middle of the bottom left square
+	 * @param cellWidth the distance between the middles of two columns
+	 * @param cellHeight the distance between the middles of two rows
+	 * @param columns the number of columns
+	 * @param rows the number of rows
+	 */
+	public PlayfieldScanner(int left, int bottom, int cellWidth, int cellHeight, int columns, int rows) {
+		this.columns = columns;
+		this.rows = rows;
+		this.xs = new int[columns*rows];
+		this.ys = new int[columns*rows];
+		this.words = (columns + 63) >>> 6;
+		this.scanned = new long[rows*words];
+
+		//rows go up the board but down the screen
+		for(int y=0; y<rows; y++) {
+			for(int x=0; x<columns; x++) {
+				xs[y*columns + x] = left + x*cellWidth;
+				ys[y*columns + x] = bottom - y*cellHeight;
+			}
+		}
+		this.region = FramePoller.bounds(xs, ys);
+	}
+
+	/**
+	 * The region of the screen covering every square.
+	 * @return the region
+	 */
+	public Rectangle region() {
+		return region;
+	}
+
+	/**
+	 * Read the playfield from the last frame of a poller,
+	 * which must cover the region.
+	 * @param poller the poller, with a frame captured
+	 * @param classifier the classifier for the piece colors
+	 */
+	public void scan(FramePoller poller, ColorClassifier classifier) {
+		scans++;
+		int i = 0;
+		for(int y=0; y<rows; y++) {
+			for(int w=0; w<words; w++) {
+				scanned[y*words + w] = 0;
+			}
+			for(int x=0; x<columns; x++, i++) {
+				if( classifier.classify(poller.rgb(xs[i], ys[i])) >= 0 ) {
+					scanned[y*words + (x >>> 6)] |= 1L << x;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The number of squares that differ between the last
+	 * scan and a board, below the spawn rows. The board
+	 * must be as wide as the playfield.
+	 * @param board the board
+	 * @return the number of squares that differ
+	 */
+	public int differences(Board board) {
+		int differences = 0;
+		for(int i=0; i<(rows - SPAWN_ROWS)*words; i++) {
+			differences += Long.bitCount(scanned[i] ^ board.rows[i]);
+		}
+		return differences;
+	}
+
+	/**
+	 * Check a board against the last scan, and make it match
+	 * the scan if it doesn't, below the spawn rows. The rows
+	 * from the spawn rows up are left as they are, since the
+	 * scan of them has the falling piece in it.
+	 * @param board the board
+	 * @return true if the board had to be changed
+	 */
+	public boolean resync(Board board) {
+		if( differences(board) == 0 ) {
+			return false;
+		}
+		mismatches++;
+
+		int kept = (rows - SPAWN_ROWS)*words;
+		System.arraycopy(scanned, 0, board.rows, 0, kept);
+		board.recount();
+		return true;
+	}
+
+	/**
+	 * The number of scans that didn't match the model.
+	 */
+	public long mismatches() {
+		return mismatches;
+	}
+
+	/**
+	 * A string with how often scans didn't match the model.
+	 */
+	public String toString() {
+		return scans + " scans, " + mismatches + " resyncs";
+	}
+}
@@ -0,0 +1,338 @@
+package tetris;
+
+import java.awt.event.KeyEvent;
+import java.util.Arrays;
+
+/**
+ * A class to find every placement a piece can reach on a board,
+ * with the keys to reach it, rather than only the placements of a
+ * rotation at the drop height followed by a hard drop. Sliding
+ * under an overhang (a tuck) and rotating into a gap at the bottom
+ * (a spin) are found too.
+ *
+ * The moves are the ones the game allows: one column left or right,
+ * a clockwise rotation about the center with no wall kicks, and a
+ * soft drop of one row, each only if the piece is still on the board
+ * and clear of its blocks. A placement is a state of the piece,
+ * (column, row, rotation), that can be reached from the drop point
+ * and can't move down, so it locks there.
+ *
+ * The states are searched breadth first, so the keys to each
+ * placement are as few as there can be. Every row at and above the
+ * top of the stack is empty, so the same columns and rotations can
+ * be reached in each of them; rather than search each one, the
+ * piece falls from the drop height straight to the top of the stack
+ * in one step, so the search only covers the rows of the stack.
+ * Collisions are tested a row of the piece at a time against the
+ * packed rows of the board (see Board.collides).
+ *
+ * The search for each piece type is kept, with the hash and a copy
+ * of the rows of the board it was for, so asking again for the same
+ * board and type (to get the keys of the move chosen, say) doesn't
+ * search again. The rows are compared too, as in DecisionCache, so
+ * two boards with the same hash never share a search.
+ * Nothing is made while searching, but a Reachability can only be
+ * used by one thread.
+ */
+public class Reachability {
+
+	/**
+	 * The size of the board searched.
+	 */
+	final int width;
+	final int height;
+	/**
+	 * The search for each piece type.
+	 */
+	final Search[] searches = new Search[PieceShape.SHAPES.length];
+	/**
+	 * The queue of states to look at, shared by every search.
+	 */
+	final int[] queue;
+
+	/**
+	 * The search of one piece type on one board: the hash and
+	 * the rows under the highest column of the board, for each
+	 * state, the search it was last reached in and the state
+	 * it was reached from, and the placements found.
+	 */
+	static class Search {
+		long hash;
+		final long[] rows;
+		int rowCount;
+		int type = -1;
+		int dropX;
+		int dropY;
+		int stamp;
+		final int[] reached;
+		final int[] from;
+		int count;
+		final int[] states;
+
+		Search(int states, int words) {
+			rows = new long[words];
+			reached = new int[states];
+			from = new int[states];
+			this.states = new int[states];
+		}
+	}
+
+	/**
+	 * A constructor for the class.
+	 * @param width the number of columns of the boards to search
+	 * @param height the number of rows of the boards to search
+	 */
+	public Reachability(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.queue = new int[4 * width * height];
+	}
+
+	/**
+	 * The state of a piece at the given column, row and rotation.
+	 */
+	int state(int x, int y, int rotation) {
+		return (rotation*height + y)*width + x;
+	}
+
+	/**
+	 * The column of the center of the piece in a state.
+	 */
+	public int x(int state) {
+		return state % width;
+	}
+
+	/**
+	 * The row of the center of the piece in a state.
+	 */
+	public int y(int state) {
+		return (state / width) % height;
+	}
+
+	/**
+	 * The rotation of the piece in a state.
+	 */
+	public int rotation(int state) {
+		return state / (width * height);
+	}
+
+	/**
+	 * Whether or not a piece fits at the given column, row and
+	 * rotation: on the board, and clear of its blocks.
+	 */
+	static boolean fits(Board board, PieceShape shape, int x, int y) {
+		int left = x + shape.minX;
+		int bottom = y + shape.minY;
+		if( left < 0 || x + shape.maxX >= board.width || bottom < 0 || y + shape.maxY >= board.height ) {
+			return false;
+		}
+		//nothing collides above the stack
+		return bottom >= board.maxHeight || !board.collides(shape.rowMasks, left, bottom);
+	}
+
+	/**
+	 * Whether or not a search was for a board with the same rows.
+	 */
+	static boolean sameRows(Search search, Board board) {
+		if( search.rowCount != board.maxHeight * board.words ) {
+			return false;
+		}
+		for(int i=0; i<search.rowCount; i++) {
+			if( search.rows[i] != board.rows[i] ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find every placement of a piece dropped at the given point,
+	 * unless they were found for this board already.
+	 * @param board the board
+	 * @param type the type of the piece
+	 * @param dropX the column the piece appears at
+	 * @param dropY the row the piece appears at
+	 * @return the number of placements, which are then given by placement
+	 */
+	public int search(Board board, int type, int dropX, int dropY) {
+		if( board.width != width || board.height != height ) {
+			throw new IllegalArgumentException("board is " + board.width + "x" + board.height
+					+ ", not " + width + "x" + height);
+		}
+		Search search = searches[type];
+		if( search == null ) {
+			search = searches[type] = new Search(4 * width * height, height * board.words);
+		}
+		long hash = board.hash();
+		if( search.type == type && search.hash == hash && search.dropX == dropX && search.dropY == dropY
+				&& sameRows(search, board) ) {
+			Metrics.count(Metrics.Counter.REACH_HITS, 1);
+			return search.count;
+		}
+		search.type = type;
+		search.hash = hash;
+		search.rowCount = board.maxHeight * board.words;
+		System.arraycopy(board.rows, 0, search.rows, 0, search.rowCount);
+		search.dropX = dropX;
+		search.dropY = dropY;
+		search.count = 0;
+		if( ++search.stamp == 0 ) {
+			Arrays.fill(search.reached, 0);
+			search.stamp = 1;
+		}
+		int stamp = search.stamp;
+		int[] reached = search.reached;
+		int[] from = search.from;
+
+		//the piece has to fit where it appears
+		if( !fits(board, PieceShape.get(type, 0), dropX, dropY) ) {
+			return 0;
+		}
+		int head = 0;
+		int tail = 0;
+		int start = state(dropX, dropY, 0);
+		reached[start] = stamp;
+		from[start] = -1;
+		queue[tail++] = start;
+
+		while( head < tail ) {
+			int state = queue[head++];
+			int x = x(state);
+			int y = y(state);
+			int rotation = rotation(state);
+			PieceShape shape = PieceShape.get(type, rotation);
+
+			//rotate, then move left and right
+			int turned = (rotation + 1) & 3;
+			int next = state(x, y, turned);
+			if( reached[next] != stamp && fits(board, PieceShape.get(type, turned), x, y) ) {
+				reached[next] = stamp;
+				from[next] = state;
+				queue[tail++] = next;
+			}
+			for(int dx=-1; dx<=1; dx+=2) {
+				next = state + dx;
+				if( x + dx >= 0 && x + dx < width && reached[next] != stamp && fits(board, shape, x + dx, y) ) {
+					reached[next] = stamp;
+					from[next] = state;
+					queue[tail++] = next;
+				}
+			}
+
+			//move down: straight to the top of the stack if the piece
+			//is above it, otherwise a row
+			int down = y - 1;
+			if( y + shape.minY > board.maxHeight ) {
+				down = board.maxHeight - shape.minY;
+			}
+			if( fits(board, shape, x, down) ) {
+				next = state(x, down, rotation);
+				if( reached[next] != stamp ) {
+					reached[next] = stamp;
+					from[next] = state;
+					queue[tail++] = next;
+				}
+			} else {
+				//it locks here
+				search.states[search.count++] = state;
+			}
+		}
+		Metrics.count(Metrics.Counter.REACH_SEARCHES, 1);
+		return search.count;
+	}
+
+	/**
+	 * A placement found by the last search for a piece type.
+	 * @param type the type of the piece
+	 * @param i the index of the placement
+	 * @return the state of the placement (see x, y and rotation)
+	 */
+	public int placement(int type, int i) {
+		return searches[type].states[i];
+	}
+
+	/**
+	 * The keys to move a piece from where it appears to a
+	 * state found by the last search for its type, on the board
+	 * of that search, before it is hard dropped: VK_UP to rotate,
+	 * VK_LEFT and VK_RIGHT to move, and VK_DOWN to soft drop a row.
+	 *
+	 * If the piece can rotate and move at the drop height and
+	 * then fall straight to the state, those are the keys, as for
+	 * a move without tucks. Otherwise they are the keys of the
+	 * search, less any soft drops at the end, since the hard drop
+	 * does the same.
+	 * @param board the board of the search
+	 * @param type the type of the piece
+	 * @param state the state
+	 * @param keys where to put the keys
+	 * @return the number of keys, or -1 if the state wasn't reached
+	 */
+	public int keys(Board board, int type, int state, int[] keys) {
+		Search search = searches[type];
+		if( search == null || search.reached[state] != search.stamp ) {
+			return -1;
+		}
+
+		//go from above the state at the drop height, if the piece
+		//can get there and fall straight down
+		int x = x(state);
+		int rotation = rotation(state);
+		int above = state(x, search.dropY, rotation);
+		if( search.reached[above] == search.stamp ) {
+			PieceShape shape = PieceShape.get(type, rotation);
+			int y = y(state) + 1;
+			while( y < search.dropY && fits(board, shape, x, y) ) {
+				y++;
+			}
+			if( y == search.dropY ) {
+				state = above;
+			}
+		}
+
+		//count the keys back to the start, skipping the soft drops at the end
+		int count = 0;
+		boolean dropping = true;
+		for(int s=state; search.from[s] >= 0; s=search.from[s]) {
+			if( dropping && y(s) != y(search.from[s]) ) {
+				continue;
+			}
+			dropping = false;
+			count += moveKeys(search.from[s], s);
+		}
+		if( count > keys.length ) {
+			throw new IllegalArgumentException("too many keys for the array: " + count);
+		}
+
+		//then fill them in from the end
+		int at = count;
+		dropping = true;
+		for(int s=state; search.from[s] >= 0; s=search.from[s]) {
+			int previous = search.from[s];
+			if( dropping && y(s) != y(previous) ) {
+				continue;
+			}
+			dropping = false;
+			int key;
+			if( y(s) != y(previous) ) {
+				key = KeyEvent.VK_DOWN;
+			} else if( rotation(s) != rotation(previous) ) {
+				key = KeyEvent.VK_UP;
+			} else {
+				key = x(s) < x(previous) ? KeyEvent.VK_LEFT : KeyEvent.VK_RIGHT;
+			}
+			for(int k=moveKeys(previous, s); k>0; k--) {
+				keys[--at] = key;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The number of keys for one step of the search: a soft
+	 * drop a row at a time, and one for anything else.
+	 */
+	int moveKeys(int from, int to) {
+		return Math.max(1, y(from) - y(to));
+	}
+}
@@ -0,0 +1,86 @@
+package tetris;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Key presses that are recorded, with when they happened,
+ * instead of being sent anywhere. This stands in for a Robot
+ * so the bot's keys can be checked without a display. The
+ * keys can also be passed on to another output.
+ */
+public class RecordingKeyOutput implements KeyOutput {
+
+	/**
+	 * A recorded key press or release.
+	 */
+	public static class Key {
+		/** When it happened, from System.nanoTime. */
+		public final long nanos;
+		/** The key code. */
+		public final int keyCode;
+		/** True for a press, false for a release. */
+		public final boolean press;
+
+		Key(long nanos, int keyCode, boolean press) {
+			this.nanos = nanos;
+			this.keyCode = keyCode;
+			this.press = press;
+		}
+
+		public String toString() {
+			return (press ? "press " : "release ") + keyCode + " at " + nanos;
+		}
+	}
+
+	/**
+	 * The keys recorded so far.
+	 */
+	List<Key> keys = new ArrayList<Key>();
+	/**
+	 * Where the keys are passed on to, or null.
+	 */
+	KeyOutput next;
+
+	/**
+	 * A constructor for the class, which only records.
+	 */
+	public RecordingKeyOutput() {
+		this(null);
+	}
+
+	/**
+	 * A constructor for the class, which records the keys
+	 * and then passes them on.
+	 * @param next where to pass the keys on to
+	 */
+	public RecordingKeyOutput(KeyOutput next) {
+		this.next = next;
+	}
+
+	public void press(int keyCode) {
+		record(new Key(System.nanoTime(), keyCode, true));
+		if( next != null ) {
+			next.press(keyCode);
+		}
+	}
+
+	public void release(int keyCode) {
+		record(new Key(System.nanoTime(), keyCode, false));
+		if( next != null ) {
+			next.release(keyCode);
+		}
+	}
+
+	synchronized void record(Key key) {
+		keys.add(key);
+	}
+
+	/**
+	 * Get a copy of the keys recorded so far.
+	 * @return the keys, in the order they happened
+	 */
+	public synchronized List<Key> keys() {
+		return new ArrayList<Key>(keys);
+	}
+}
@@ -0,0 +1,204 @@
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ * A record of one game: the size of its board, its pieces, where
+ * each one went, and the hash of the board at the end. Boards
+ * aren't stored, since playing the placements again gives them
+ * back.
+ *
+ * Each piece is packed into ENTRY_BITS bits: its type in the
+ * lowest 3 bits, its rotation in the next 2, a bit that is set if
+ * it was placed (the piece that ends a game isn't), and the column
+ * of its center in the top 8, so boards can be up to 256 wide.
+ * Replays are written to and read from files by ReplayWriter and
+ * ReplayReader.
+ */
+public class Replay {
+
+	/**
+	 * The number of bits in each entry.
+	 */
+	public final static int ENTRY_BITS = 14;
+	/**
+	 * The bit of an entry set if the piece was placed.
+	 */
+	final static int PLACED = 1 << 5;
+
+	/**
+	 * The seed the game's pieces were drawn with.
+	 */
+	public long seed;
+	/**
+	 * The number of columns of the board, and the number
+	 * of rows the game was played in.
+	 */
+	public int width = Tetris.BOARD_DIMENSIONS.width;
+	public int rows = Tetris.BOARD_DIMENSIONS.height - Tetris.VERTICAL_BUFFER;
+	/**
+	 * The entries, one per piece, and how many there are.
+	 */
+	short[] entries;
+	int count;
+	/**
+	 * The lines cleared, and the hash of the board at the
+	 * end of the game.
+	 */
+	public int lines;
+	public long hash;
+
+	/**
+	 * A constructor for the class, for a game about
+	 * to be played.
+	 * @param seed the seed of the game's pieces
+	 */
+	public Replay(long seed) {
+		this(seed, new short[64], 0);
+	}
+
+	/**
+	 * A constructor for the class, for a recorded game.
+	 */
+	Replay(long seed, short[] entries, int count) {
+		this.seed = seed;
+		this.entries = entries;
+		this.count = count;
+	}
+
+	/**
+	 * Add an entry.
+	 */
+	void add(int entry) {
+		if( count == entries.length ) {
+			entries = Arrays.copyOf(entries, count * 2);
+		}
+		entries[count++] = (short) entry;
+	}
+
+	/**
+	 * Record a piece and where it was placed.
+	 * @param type the type of the piece
+	 * @param x the column of the center of the piece
+	 * @param rotation the rotation of the piece
+	 */
+	public void placed(int type, int x, int rotation) {
+		if( x < 0 || x > 255 ) {
+			throw new IllegalArgumentException("column can't be recorded: " + x);
+		}
+		add(type | rotation << 3 | PLACED | x << 6);
+	}
+
+	/**
+	 * Record a piece that couldn't be placed, ending the game.
+	 * @param type the type of the piece
+	 */
+	public void failed(int type) {
+		add(type);
+	}
+
+	/**
+	 * Record the end of the game.
+	 * @param tetris the game
+	 */
+	public void finish(Tetris tetris) {
+		this.width = tetris.board.width;
+		this.rows = tetris.visibleRows;
+		this.lines = (int) tetris.tetrises;
+		this.hash = tetris.board.hash();
+	}
+
+	/**
+	 * The number of pieces in the game.
+	 */
+	public int pieces() {
+		return count;
+	}
+
+	/**
+	 * The type of a piece.
+	 */
+	public int type(int i) {
+		return entries[i] & 7;
+	}
+
+	/**
+	 * The rotation of a piece.
+	 */
+	public int rotation(int i) {
+		return (entries[i] >> 3) & 3;
+	}
+
+	/**
+	 * The column of the center of a piece.
+	 */
+	public int x(int i) {
+		return (entries[i] >> 6) & 255;
+	}
+
+	/**
+	 * Whether or not a piece was placed.
+	 */
+	public boolean isPlaced(int i) {
+		return (entries[i] & PLACED) != 0;
+	}
+
+	/**
+	 * Play the pieces again, where they were placed.
+	 * @return the game at the end
+	 */
+	public Tetris play() {
+		Tetris tetris = new Tetris(width, rows);
+		for(int i=0; i<count; i++) {
+			if( !isPlaced(i) ) {
+				break;
+			}
+			tetris.addPiece(type(i));
+			tetris.placePiece(x(i), rotation(i));
+			tetris.tetrisify();
+		}
+		return tetris;
+	}
+
+	/**
+	 * Play the pieces again and check the game ends the
+	 * way it was recorded.
+	 * @return true if the lines and final board match
+	 */
+	public boolean verify() {
+		Tetris tetris = play();
+		return (int) tetris.tetrises == lines && tetris.board.hash() == hash;
+	}
+
+	/**
+	 * Play the pieces again with the greedy AI with the given
+	 * constants (Tetris.makeMove), and find the first piece it
+	 * places differently from the recording. This finds where
+	 * a change to the AI changed a game played with no preview.
+	 * @param constants the AI constants
+	 * @return the index of the first piece placed differently, or -1 if none are
+	 */
+	public int divergence(double[] constants) {
+		Tetris tetris = new Tetris(width, rows, constants);
+		for(int i=0; i<count; i++) {
+			tetris.addPiece(type(i));
+			int[] moves = tetris.makeMove();
+			if( moves == null || !isPlaced(i) ) {
+				//the game should have ended here, and only here
+				return moves == null && !isPlaced(i) ? -1 : i;
+			}
+			if( tetris.DROP_POINT.x - moves[0] != x(i) || moves[1] != rotation(i) ) {
+				return i;
+			}
+			tetris.tetrisify();
+		}
+		return -1;
+	}
+
+	/**
+	 * A toString for the replay (for debugging).
+	 */
+	public String toString() {
+		return "seed: " + seed + " pieces: " + count + " lines: " + lines;
+	}
+}
@@ -0,0 +1,178 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A class to read the replays in a file written by
+ * ReplayWriter, in order. The file is mapped a window
+ * at a time.
+ */
+public class ReplayReader implements AutoCloseable {
+
+	/**
+	 * The file, the window of it that is mapped, and
+	 * where the window starts in the file.
+	 */
+	final FileChannel channel;
+	final long size;
+	MappedByteBuffer window;
+	long windowStart;
+	/**
+	 * Where the next replay starts.
+	 */
+	long position;
+
+	/**
+	 * A constructor for the class. Opens the file and
+	 * checks its header.
+	 * @param file the file to read
+	 */
+	public ReplayReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		size = channel.size();
+		if( size < ReplayWriter.HEADER ) {
+			throw new IOException("not a replay file: " + file);
+		}
+		map(0, ReplayWriter.HEADER);
+		if( window.getInt(0) != ReplayWriter.MAGIC ) {
+			throw new IOException("not a replay file: " + file);
+		}
+		if( window.getInt(4) != ReplayWriter.VERSION ) {
+			throw new IOException("unknown replay file version: " + window.getInt(4));
+		}
+		position = ReplayWriter.HEADER;
+	}
+
+	/**
+	 * Map a window of the file holding at least the given
+	 * number of bytes from the given position.
+	 */
+	void map(long start, int bytes) throws IOException {
+		long length = Math.min(size - start, Math.max(bytes, ReplayWriter.WINDOW));
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		window.order(ByteOrder.LITTLE_ENDIAN);
+		windowStart = start;
+	}
+
+	/**
+	 * Make sure the window holds the given bytes.
+	 */
+	void require(long start, int bytes) throws IOException {
+		if( start + bytes > size ) {
+			throw new IOException("replay file ends in the middle of a replay");
+		}
+		if( start < windowStart || start + bytes > windowStart + window.limit() ) {
+			map(start, bytes);
+		}
+	}
+
+	/**
+	 * Read the next replay.
+	 * @return the replay, or null if there are no more
+	 */
+	public Replay next() throws IOException {
+		if( position >= size ) {
+			return null;
+		}
+		require(position, ReplayWriter.REPLAY_HEADER);
+		int at = (int) (position - windowStart);
+		long seed = window.getLong(at);
+		long hash = window.getLong(at + 8);
+		int count = window.getInt(at + 16);
+		int lines = window.getInt(at + 20);
+		int width = window.getInt(at + 24);
+		int rows = window.getInt(at + 28);
+
+		int bytes = (count * Replay.ENTRY_BITS + 7) / 8;
+		require(position + ReplayWriter.REPLAY_HEADER, bytes);
+		at = (int) (position + ReplayWriter.REPLAY_HEADER - windowStart);
+
+		//unpack the entries, a byte at a time
+		short[] entries = new short[Math.max(count, 1)];
+		int pending = 0;
+		int pendingBits = 0;
+		for(int i=0; i<count; i++) {
+			while( pendingBits < Replay.ENTRY_BITS ) {
+				pending |= (window.get(at++) & 0xff) << pendingBits;
+				pendingBits += 8;
+			}
+			entries[i] = (short) (pending & 0x3FFF);
+			pending >>>= Replay.ENTRY_BITS;
+			pendingBits -= Replay.ENTRY_BITS;
+		}
+		position += ReplayWriter.REPLAY_HEADER + bytes;
+
+		Replay replay = new Replay(seed, entries, count);
+		replay.lines = lines;
+		replay.width = width;
+		replay.rows = rows;
+		replay.hash = hash;
+		return replay;
+	}
+
+	/**
+	 * Close the file.
+	 */
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	/**
+	 * Play every replay in a file again and check its final
+	 * board. If AI constants are given, also find the first
+	 * piece the greedy AI with those constants places
+	 * differently in each game:
+	 *
+	 * ReplayReader file [constants...]
+	 */
+	public static void main(String[] args) throws IOException {
+		if( args.length == 0 ) {
+			System.err.println("usage: ReplayReader file [constants...]");
+			System.exit(1);
+		}
+		double[] constants = null;
+		if( args.length > 1 ) {
+			constants = new double[args.length - 1];
+			for(int i=1; i<args.length; i++) {
+				constants[i-1] = Double.parseDouble(args[i]);
+			}
+		}
+
+		long games = 0;
+		long pieces = 0;
+		long failed = 0;
+		long diverged = 0;
+		long start = System.nanoTime();
+		try (ReplayReader reader = new ReplayReader(Paths.get(args[0]))) {
+			Replay replay;
+			while( (replay = reader.next()) != null ) {
+				games++;
+				pieces += replay.pieces();
+				if( !replay.verify() ) {
+					failed++;
+					System.out.println("didn't match: " + replay);
+				}
+				if( constants != null ) {
+					int piece = replay.divergence(constants);
+					if( piece >= 0 ) {
+						diverged++;
+						System.out.println("placed differently at piece " + piece + ": " + replay);
+					}
+				}
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d games, %d pieces, %d didn't match", games, pieces, failed);
+		if( constants != null ) {
+			System.out.printf(", %d placed differently", diverged);
+		}
+		System.out.printf(" (%.0f pieces/s)%n", pieces / seconds);
+	}
+}
@@ -0,0 +1,138 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A class to append replays to a memory-mapped file, to be
+ * read back by ReplayReader. Games on different threads can
+ * share a writer.
+ *
+ * The file starts with MAGIC and VERSION as ints. Each replay
+ * follows, little endian: the seed (long), the hash of the final
+ * board (long), the number of pieces (int), the lines cleared
+ * (int), the width of the board (int) and the rows the game was
+ * played in (int), then the entries (see Replay), packed
+ * ENTRY_BITS bits each from the lowest bit of the first byte.
+ *
+ * The file is mapped a window at a time, grown as needed, and cut
+ * down to what was written when the writer is closed.
+ */
+public class ReplayWriter implements AutoCloseable {
+
+	/**
+	 * The start of a replay file, and its format version.
+	 */
+	public final static int MAGIC = 0x50455254;
+	public final static int VERSION = 2;
+	/**
+	 * The size of the file header, and of the header
+	 * of each replay.
+	 */
+	final static int HEADER = 8;
+	final static int REPLAY_HEADER = 32;
+	/**
+	 * The size of the window mapped at a time, unless a
+	 * replay needs more.
+	 */
+	final static int WINDOW = 1 << 24;
+
+	/**
+	 * The file, the window of it that is mapped, and
+	 * where the window starts in the file.
+	 */
+	final FileChannel channel;
+	MappedByteBuffer window;
+	long windowStart;
+	/**
+	 * The size of what has been written.
+	 */
+	long end;
+	/**
+	 * The number of replays written.
+	 */
+	long replays;
+
+	/**
+	 * A constructor for the class. Creates (or replaces)
+	 * the file.
+	 * @param file the file to write
+	 */
+	public ReplayWriter(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		map(0, HEADER);
+		window.putInt(0, MAGIC);
+		window.putInt(4, VERSION);
+		end = HEADER;
+	}
+
+	/**
+	 * Map a window of the file big enough for the given
+	 * number of bytes from the given position.
+	 */
+	void map(long start, int bytes) throws IOException {
+		window = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(bytes, WINDOW));
+		window.order(ByteOrder.LITTLE_ENDIAN);
+		windowStart = start;
+	}
+
+	/**
+	 * Append a replay to the file.
+	 * @param replay the replay
+	 */
+	public synchronized void append(Replay replay) throws IOException {
+		int size = REPLAY_HEADER + (replay.count * Replay.ENTRY_BITS + 7) / 8;
+		if( end + size > windowStart + window.capacity() ) {
+			map(end, size);
+		}
+		int at = (int) (end - windowStart);
+		window.putLong(at, replay.seed);
+		window.putLong(at + 8, replay.hash);
+		window.putInt(at + 16, replay.count);
+		window.putInt(at + 20, replay.lines);
+		window.putInt(at + 24, replay.width);
+		window.putInt(at + 28, replay.rows);
+		at += REPLAY_HEADER;
+
+		//pack the entries, a byte at a time
+		int pending = 0;
+		int pendingBits = 0;
+		for(int i=0; i<replay.count; i++) {
+			pending |= (replay.entries[i] & 0x3FFF) << pendingBits;
+			pendingBits += Replay.ENTRY_BITS;
+			while( pendingBits >= 8 ) {
+				window.put(at++, (byte) pending);
+				pending >>>= 8;
+				pendingBits -= 8;
+			}
+		}
+		if( pendingBits > 0 ) {
+			window.put(at, (byte) pending);
+		}
+		end += size;
+		replays++;
+	}
+
+	/**
+	 * The number of replays written.
+	 */
+	public synchronized long replays() {
+		return replays;
+	}
+
+	/**
+	 * Write the replays out, cut the file down to them,
+	 * and close it.
+	 */
+	public synchronized void close() throws IOException {
+		window.force();
+		window = null;
+		channel.truncate(end);
+		channel.close();
+	}
+}
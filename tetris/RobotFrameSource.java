@@ -0,0 +1,30 @@
+package tetris;
+
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.image.BufferedImage;
+
+/**
+ * A source of frames from the real screen, captured with
+ * a Robot. A whole region is captured in one call, instead
+ * of asking the windowing system for each pixel.
+ */
+public class RobotFrameSource implements FrameSource {
+
+	/**
+	 * The robot to capture with.
+	 */
+	Robot robot;
+
+	/**
+	 * Constructor
+	 * @param robot the robot to capture with
+	 */
+	public RobotFrameSource(Robot robot) {
+		this.robot = robot;
+	}
+
+	public BufferedImage capture(Rectangle region) {
+		return robot.createScreenCapture(region);
+	}
+}
@@ -0,0 +1,30 @@
+package tetris;
+
+import java.awt.Robot;
+
+/**
+ * Key presses sent to the real keyboard with a Robot.
+ */
+public class RobotKeyOutput implements KeyOutput {
+
+	/**
+	 * The robot to press keys with.
+	 */
+	Robot robot;
+
+	/**
+	 * Constructor
+	 * @param robot the robot to press keys with
+	 */
+	public RobotKeyOutput(Robot robot) {
+		this.robot = robot;
+	}
+
+	public void press(int keyCode) {
+		robot.keyPress(keyCode);
+	}
+
+	public void release(int keyCode) {
+		robot.keyRelease(keyCode);
+	}
+}
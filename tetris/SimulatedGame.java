@@ -0,0 +1,453 @@
+package tetris;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * A stand-in for an online Tetris game, so the live bot can be
+ * run and timed without a browser or a display.
+ *
+ * The game draws itself into an image in memory, in the colors of
+ * TetrisFriendsPlayer: the playfield, a box with the color of the
+ * falling piece, and a box for each preview piece. It is read as a
+ * FrameSource, and played by sending it keys as a KeyOutput: UP
+ * rotates the falling piece, LEFT and RIGHT move it, DOWN moves it
+ * down a row, and SPACE drops it. New pieces appear SPAWN_NANOS after the last one locks.
+ *
+ * The game times each piece from when it appears to when it is
+ * dropped, and counts the pieces played per minute.
+ */
+public class SimulatedGame implements FrameSource, KeyOutput {
+
+	/**
+	 * The size of a square of the playfield, and the
+	 * margin around the playfield, in pixels.
+	 */
+	final static int CELL = 16;
+	final static int MARGIN = 16;
+	/**
+	 * The number of rows of the playfield shown.
+	 */
+	final static int ROWS = Tetris.BOARD_DIMENSIONS.height - Tetris.VERTICAL_BUFFER;
+	/**
+	 * The background color.
+	 */
+	final static int BACKGROUND = 0x000000;
+
+	/**
+	 * The colors of the pieces, packed as 0xRRGGBB.
+	 */
+	int[] colors;
+	/**
+	 * Where the pieces come from, and the pieces taken from
+	 * it that haven't appeared yet: the next piece, then the
+	 * rest of the preview.
+	 */
+	PieceSource source;
+	int[] queue;
+	int known;
+	/**
+	 * The number of preview pieces shown.
+	 */
+	int previewSize;
+	/**
+	 * The board, the falling piece, and whether it is on
+	 * screen. The piece starts where Tetris drops pieces.
+	 */
+	Board board;
+	Piece piece;
+	boolean falling;
+	Point spawn;
+	/**
+	 * When the next piece is due, from System.nanoTime.
+	 */
+	long spawnAt;
+	/**
+	 * How long after a piece locks the next one appears.
+	 */
+	public long SPAWN_NANOS;
+	/**
+	 * Whether the game is over, and what to run when it ends.
+	 */
+	volatile boolean over;
+	Runnable onOver;
+	/**
+	 * The image the game is drawn into, and its pixels.
+	 */
+	BufferedImage screen;
+	int[] pixels;
+	/**
+	 * The pieces dropped and lines cleared, when the first
+	 * piece appeared and the last was dropped, and the total
+	 * and longest time from a piece appearing to its drop.
+	 */
+	long pieces;
+	long lines;
+	long firstSpawn;
+	long lastLock;
+	long spawnedAt;
+	long latencyNanos;
+	long maxLatencyNanos;
+
+	/**
+	 * A constructor for the class.
+	 * @param source where the pieces come from
+	 * @param previewSize the number of preview pieces to show
+	 * @param spawnNanos how long after a piece locks the next appears
+	 */
+	public SimulatedGame(PieceSource source, int previewSize, long spawnNanos) {
+		TetrisFriendsPlayer palette = new TetrisFriendsPlayer();
+		this.colors = new int[palette.pieces.length];
+		for(int i=0; i<colors.length; i++) {
+			colors[i] = palette.pieces[i].getRGB() & 0xFFFFFF;
+		}
+
+		this.source = source;
+		this.queue = new int[previewSize + 1];
+		this.previewSize = previewSize;
+		this.SPAWN_NANOS = spawnNanos;
+		this.board = new Board(Tetris.BOARD_DIMENSIONS.width, Tetris.BOARD_DIMENSIONS.height);
+		//pieces start where the bot's model drops them
+		this.spawn = new Tetris().DROP_POINT;
+		this.piece = new Piece(0, spawn);
+
+		//the playfield, then a column of boxes for the pieces
+		int width = 2*MARGIN + board.width*CELL + 2*CELL + MARGIN;
+		int height = 2*MARGIN + ROWS*CELL;
+		this.screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		this.pixels = ((DataBufferInt) screen.getRaster().getDataBuffer()).getData();
+
+		//fill the preview, and bring on the first piece
+		while( known < queue.length && fetch() ) {
+		}
+		this.spawnAt = System.nanoTime();
+		draw();
+	}
+
+	/**
+	 * Take the next piece from the source into the queue.
+	 * @return false if the source has run out
+	 */
+	boolean fetch() {
+		int next = source.next();
+		if( next < 0 ) {
+			return false;
+		}
+		queue[known++] = next;
+		return true;
+	}
+
+	/**
+	 * Set something to run when the game ends, such as
+	 * stopping the player.
+	 * @param onOver what to run
+	 */
+	public void setOnOver(Runnable onOver) {
+		this.onOver = onOver;
+	}
+
+	/**
+	 * Set up a player to play this game: where to look,
+	 * where to send keys, and (if scan is set) the
+	 * playfield to check its model against.
+	 * @param player the player
+	 * @param scan whether the player should scan the playfield
+	 */
+	public void configure(TetrisAIPlayer player, boolean scan) {
+		player.setFrameSource(this);
+		player.setKeyOutput(this);
+		player.PIECE_X = pieceX();
+		player.PIECE_Y = boxY(0);
+
+		int[] xs = new int[previewSize];
+		int[] ys = new int[previewSize];
+		for(int i=0; i<previewSize; i++) {
+			xs[i] = pieceX();
+			ys[i] = boxY(i+1);
+		}
+		player.PREVIEW_X = xs;
+		player.PREVIEW_Y = ys;
+
+		if( scan ) {
+			player.setPlayfield(new PlayfieldScanner(MARGIN + CELL/2, MARGIN + (ROWS-1)*CELL + CELL/2,
+					CELL, CELL, board.width, ROWS));
+		}
+		setOnOver(player::stop);
+	}
+
+	/**
+	 * The x coordinate of the middle of the piece boxes.
+	 */
+	int pieceX() {
+		return 2*MARGIN + board.width*CELL + CELL;
+	}
+
+	/**
+	 * The y coordinate of the middle of a piece box: box 0
+	 * is the falling piece, and the rest are the preview.
+	 */
+	int boxY(int box) {
+		return MARGIN + CELL + box*3*CELL;
+	}
+
+	/**
+	 * Bring on the next piece, if it is due. The game ends if
+	 * there are no more pieces or the piece doesn't fit.
+	 */
+	void spawnIfDue() {
+		if( falling || over || System.nanoTime() < spawnAt ) {
+			return;
+		}
+		if( known == 0 ) {
+			end();
+			return;
+		}
+
+		//take the first piece of the queue
+		int type = queue[0];
+		System.arraycopy(queue, 1, queue, 0, known-1);
+		known--;
+		fetch();
+
+		piece.reset(type, spawn.x, spawn.y);
+		if( piece.collides(board) ) {
+			end();
+			return;
+		}
+		falling = true;
+		spawnedAt = System.nanoTime();
+		if( pieces == 0 ) {
+			firstSpawn = spawnedAt;
+		}
+		draw();
+	}
+
+	/**
+	 * End the game.
+	 */
+	void end() {
+		over = true;
+		falling = false;
+		draw();
+		if( onOver != null ) {
+			onOver.run();
+		}
+	}
+
+	/**
+	 * Capture a region of the game's screen, bringing on
+	 * the next piece first if it is due.
+	 */
+	public synchronized BufferedImage capture(Rectangle region) {
+		spawnIfDue();
+		BufferedImage frame = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_RGB);
+		int[] out = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+		for(int y=0; y<region.height; y++) {
+			System.arraycopy(pixels, (region.y + y)*screen.getWidth() + region.x, out, y*region.width, region.width);
+		}
+		return frame;
+	}
+
+	/**
+	 * Act on a key, if a piece is falling.
+	 */
+	public synchronized void press(int keyCode) {
+		if( !falling ) {
+			return;
+		}
+		switch( keyCode ) {
+			case KeyEvent.VK_UP:
+				piece.rotate();
+				if( !fits() ) {
+					piece.rotateBy(3);
+				}
+				break;
+			case KeyEvent.VK_LEFT:
+				piece.center.x--;
+				if( !fits() ) {
+					piece.center.x++;
+				}
+				break;
+			case KeyEvent.VK_RIGHT:
+				piece.center.x++;
+				if( !fits() ) {
+					piece.center.x--;
+				}
+				break;
+			case KeyEvent.VK_DOWN:
+				piece.center.y--;
+				if( !fits() ) {
+					piece.center.y++;
+				}
+				break;
+			case KeyEvent.VK_SPACE:
+				lock();
+				break;
+		}
+	}
+
+	public void release(int keyCode) {
+	}
+
+	/**
+	 * Whether or not the falling piece is on the
+	 * board and clear of the blocks on it.
+	 */
+	boolean fits() {
+		return piece.isOnBoard() && !piece.collides(board);
+	}
+
+	/**
+	 * Drop the falling piece and clear its lines, then time
+	 * it. The game ends if the piece is left sticking out of
+	 * the playfield.
+	 */
+	void lock() {
+		piece.add(board);
+		lines += board.removeFullRows(piece.center.y + piece.shape.minY, piece.center.y + piece.shape.maxY);
+		falling = false;
+
+		long now = System.nanoTime();
+		pieces++;
+		lastLock = now;
+		latencyNanos += now - spawnedAt;
+		maxLatencyNanos = Math.max(maxLatencyNanos, now - spawnedAt);
+
+		if( board.maxHeight > ROWS ) {
+			end();
+			return;
+		}
+		spawnAt = now + SPAWN_NANOS;
+		draw();
+	}
+
+	/**
+	 * Draw the game into its image.
+	 */
+	void draw() {
+		Arrays.fill(pixels, BACKGROUND);
+
+		//the playfield, with row 0 at the bottom
+		for(int y=0; y<ROWS; y++) {
+			for(int x=0; x<board.width; x++) {
+				if( board.isFilled(x, y) ) {
+					fillBox(MARGIN + x*CELL, MARGIN + (ROWS-1-y)*CELL, CELL-1, colors[(x + y) % colors.length]);
+				}
+			}
+		}
+
+		//the falling piece, then the preview
+		int left = pieceX() - CELL;
+		if( falling ) {
+			fillBox(left, boxY(0) - CELL, 2*CELL, colors[piece.type]);
+		}
+		for(int i=0; i<Math.min(known, previewSize); i++) {
+			fillBox(left, boxY(i+1) - CELL, 2*CELL, colors[queue[i]]);
+		}
+	}
+
+	/**
+	 * Fill a square of the image.
+	 */
+	void fillBox(int left, int top, int size, int rgb) {
+		for(int y=top; y<top+size; y++) {
+			Arrays.fill(pixels, y*screen.getWidth() + left, y*screen.getWidth() + left + size, rgb);
+		}
+	}
+
+	/**
+	 * Whether or not the game is over.
+	 */
+	public boolean isOver() {
+		return over;
+	}
+
+	/**
+	 * The number of pieces dropped.
+	 */
+	public synchronized long pieces() {
+		return pieces;
+	}
+
+	/**
+	 * The number of pieces dropped per minute, from when
+	 * the first piece appeared to when the last dropped.
+	 */
+	public synchronized double piecesPerMinute() {
+		return pieces == 0 ? 0 : pieces * 60e9 / (lastLock - firstSpawn);
+	}
+
+	/**
+	 * The mean time from a piece appearing to its drop,
+	 * in milliseconds.
+	 */
+	public synchronized double meanLatencyMillis() {
+		return pieces == 0 ? 0 : latencyNanos / 1e6 / pieces;
+	}
+
+	/**
+	 * The longest time from a piece appearing to its
+	 * drop, in milliseconds.
+	 */
+	public synchronized double maxLatencyMillis() {
+		return maxLatencyNanos / 1e6;
+	}
+
+	/**
+	 * A string with the pieces, lines and timings.
+	 */
+	public synchronized String toString() {
+		return String.format("pieces: %d%nlines: %d%npieces/min: %.1f%nlatency: mean %.2f ms, max %.2f ms",
+				pieces, lines, piecesPerMinute(), meanLatencyMillis(), maxLatencyMillis());
+	}
+
+	/**
+	 * Play a TetrisFriendsPlayer against a simulated game and
+	 * print how fast it played:
+	 *
+	 * SimulatedGame [pieces [waitTime [keyTime [pipelined [seed [log]]]]]]
+	 *
+	 * If a log file is given, the game is logged to it with
+	 * an EventLog.
+	 */
+	public static void main(String[] args) throws Exception {
+		int maxPieces = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int waitTime = args.length > 1 ? Integer.parseInt(args[1]) : 65;
+		int keyTime = args.length > 2 ? Integer.parseInt(args[2]) : 65;
+		boolean pipelined = args.length > 3 && Boolean.parseBoolean(args[3]);
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 0;
+		EventLog log = args.length > 5 ? new EventLog(Paths.get(args[5]), 1 << 16) : null;
+
+		//a game of a set number of pieces
+		PieceSource pieces = new UniformPieceSource(seed);
+		int[] count = { 0 };
+		SimulatedGame game = new SimulatedGame(() -> count[0]++ < maxPieces ? pieces.next() : -1, 1, 0);
+
+		TetrisFriendsPlayer player = new TetrisFriendsPlayer();
+		game.configure(player, true);
+		player.setWaitTime(waitTime);
+		player.setKeyTime(keyTime);
+		player.setPollTime(1);
+		player.setPipelined(pipelined);
+		player.setEventLog(log);
+		player.playGame();
+		if( log != null ) {
+			log.close();
+		}
+
+		System.out.println(game);
+		System.out.println("captures: " + player.poller);
+		if( player.scheduler != null ) {
+			System.out.println("keys: " + player.scheduler);
+		}
+		if( log != null && log.dropped() > 0 ) {
+			System.out.println("log records dropped: " + log.dropped());
+		}
+		System.out.print(Metrics.snapshot());
+	}
+}
@@ -2,7 +2,7 @@ package tetris;
 
 import java.awt.Dimension;
 import java.awt.Point;
-import java.util.*;
+import java.util.Arrays;
 
 /**
  * A class to handle the Tetris game backend.
@@ -12,7 +12,7 @@ import java.util.*;
 public class Tetris {
 
 	/**
-	 * A Dimension for the board dimensions. Note, we use
+	 * A Dimension for the default board dimensions. Note, we use
 	 * 10x25 even though the board is actually 10x19 so
 	 * we can hav a vertical buffer to rotate pieces which
 	 * are at the top of the board. Note, THe game still ends
@@ -25,21 +25,98 @@ public class Tetris {
 	 */
 	final static int VERTICAL_BUFFER = 6;
 	/**
-	 * Where each piece is dropped from.
+	 * The number of rows the game is played in. The board
+	 * has VERTICAL_BUFFER more rows above them.
 	 */
-	final Point DROP_POINT = new Point(4,18);
+	final int visibleRows;
 	/**
-	 * The game board
+	 * Where each piece is dropped from: the column left of
+	 * the middle, in the top row the game is played in.
 	 */
-	int[][] board;
+	final Point DROP_POINT;
+	/**
+	 * The game board, packed a row at a time into one or more
+	 * long words per row (see Board)
+	 */
+	Board board;
 	/**
 	 * The current piece that is in play
 	 */
 	Piece currentPiece;
+	/**
+	 * A scratch piece reused by makeMove to try
+	 * each possible move
+	 */
+	Piece searchPiece;
+	/**
+	 * Scratch arrays for makeMove, indexed by rotation
+	 * and the leftmost column of the piece: the lowest
+	 * row of each dropped piece (or NO_LANDING), and the
+	 * parts of its score. The features of the board after
+	 * each, if they are used, are kept Evaluator.FEATURES
+	 * to a dropped piece, by rotation and then column.
+	 */
+	int[][] landings;
+	int[][] whitespaces;
+	double[][] neighborPoints;
+	int[][] lines;
+	double[] boardFeatures;
+	/**
+	 * Scores the moves found by findMoves, from the AI
+	 * constants it was made from (see Evaluator.fromConstants).
+	 */
+	Evaluator evaluator;
+	double[] evaluatorConstants;
+	/**
+	 * Marks a dropped piece that didn't land on the board.
+	 */
+	final static int NO_LANDING = Integer.MIN_VALUE;
+	/**
+	 * The moves found by findMoves, and the column and row
+	 * of the center, the rotation and the score of each
+	 * (which are the arrays of the moves).
+	 */
+	Candidates candidates;
+	int[] moveX;
+	int[] moveY;
+	int[] moveRotations;
+	double[] moveScores;
+	/**
+	 * Finds every placement a piece can reach, with tucks and
+	 * spins, or null to only drop pieces straight down from
+	 * the drop point (see setTucks).
+	 */
+	public Reachability reachability;
+	/**
+	 * The keys of the last move made with tucks, and how
+	 * many there are (see moveKeys).
+	 */
+	int[] keys = new int[0];
+	int keyCount;
+	/**
+	 * The search used to look ahead at the preview pieces,
+	 * or null to only look at the current piece.
+	 */
+	public BeamSearch search;
+	/**
+	 * A cache of the moves chosen by makeMove(), which may be
+	 * shared with other games, or null for none. It must be
+	 * for the AI constants and the board size of this game
+	 * (see DecisionCache.isFor).
+	 */
+	public DecisionCache cache;
+	/**
+	 * The lowest and highest rows of the last piece added
+	 * to the board, which are the only rows that can be
+	 * full. If no piece has been added since the last
+	 * check, lastBottom is above lastTop.
+	 */
+	int lastBottom;
+	int lastTop;
 	/**
 	 * The number of tetrises that have occurred this game
 	 */
-	int tetrises;
+	long tetrises;
 	/**
 	 * Whether or not the game is over
 	 */
@@ -51,12 +128,29 @@ public class Tetris {
 
 	/**
 	 * A constructor for the class. THis
-	 * sets the board.
+	 * sets the board to the default size.
 	 */
 	public Tetris() {
-		board = new int[Tetris.BOARD_DIMENSIONS.height][Tetris.BOARD_DIMENSIONS.width];
-		//fill board with zeroes
+		this(Tetris.BOARD_DIMENSIONS.width, Tetris.BOARD_DIMENSIONS.height - VERTICAL_BUFFER);
+	}
+	
+	/**
+	 * A constructor for a game on a board of any size.
+	 * @param width the number of columns
+	 * @param rows the number of rows the game is played in
+	 */
+	public Tetris(int width, int rows) {
+		if( width < 4 || rows < 4 ) {
+			throw new IllegalArgumentException("board must be at least 4x4: " + width + "x" + rows);
+		}
+		this.visibleRows = rows;
+		this.DROP_POINT = new Point(width/2 - 1, rows - 1);
+		board = new Board(width, rows + VERTICAL_BUFFER);
+		//make sure the board is empty
 		initializeBoard();
+		//no piece has been added yet
+		this.lastBottom = 0;
+		this.lastTop = -1;
 		//initialize tetrises
 		this.tetrises=0;
 		this.over = false;
@@ -71,6 +165,41 @@ public class Tetris {
 		this.AI_CONSTANTS = aiConstants;
 	}
 	
+	/**
+	 * A constructor for a game on a board of any size,
+	 * with AI constants.
+	 * @param width the number of columns
+	 * @param rows the number of rows the game is played in
+	 * @param aiConstants the AI constants
+	 */
+	public Tetris(int width, int rows, double[] aiConstants) {
+		this(width, rows);
+		this.AI_CONSTANTS = aiConstants;
+	}
+	
+	/**
+	 * Let moves slide and rotate under overhangs (tucks and
+	 * spins), with soft drops, as well as drop straight down.
+	 * Every placement the piece can reach is found by a
+	 * Reachability, and the keys of the move made are given
+	 * by moveKeys. Moves aren't looked up in the cache, which
+	 * only holds columns and rotations.
+	 * @param tucks whether to find every reachable placement
+	 */
+	public void setTucks(boolean tucks) {
+		this.reachability = tucks ? new Reachability(board.width, board.height) : null;
+	}
+	
+	/**
+	 * The keys of the last move made, with tucks: VK_UP, VK_LEFT,
+	 * VK_RIGHT and VK_DOWN, to be followed by a hard drop.
+	 * @return the keys, or null if the move was dropped straight
+	 * down (see makeMove for its displacement and rotation)
+	 */
+	public int[] moveKeys() {
+		return reachability == null ? null : Arrays.copyOf(keys, keyCount);
+	}
+	
 	/**
 	 * Add a piece to the board of the given type. If we
 	 * have AI constants, use them to create the piece
@@ -81,6 +210,7 @@ public class Tetris {
 			currentPiece = new Piece(type, this.DROP_POINT);
 		else
 			currentPiece = new Piece(type, this.DROP_POINT, AI_CONSTANTS);
+		currentPiece.setBoardSize(board.width, board.height);
 	}
 	
 	/**
@@ -102,6 +232,7 @@ public class Tetris {
 	 */
 	public void drop() {
 		currentPiece.add(board);
+		notePlaced();
 	}
 	
 	/**
@@ -122,140 +253,113 @@ public class Tetris {
 	
 
 	/**
-	 * Fill the board with zeroes
+	 * Empty the board
 	 */
 	public void initializeBoard() {
-		for(int x=0; x<board.length; x++) {
-			for(int y=0; y<board[x].length; y++) {
-				board[x][y]=0;
-			}
-		}
+		board.clear();
 	}
 	
 	/**
-	 * A class to hold possible move Options.
-	 * @author mellort
+	 * Print the board.
 	 */
-	public class Option implements Comparable{
-		/**
-		 * Store the point of the piece, the rotation,
-		 * and the piece score.
-		 */
-		Point point;
-		int rot;
-		double score;
-		
-		/**
-		 * Constructor
-		 * @param point the point
-		 * @param rot the rotation
-		 * @param score the score
-		 */
-		public Option (Point point, int rot, double score) {
-			this.point = point;
-			this.rot = rot;
-			this.score = score-point.y;
-		}
-		
-		/**
-		 * Compare to another option. Just compares
-		 * their scores.
-		 */
-		public int compareTo(Object o) {
-			Option option = (Option) o;
-			return (new Double(this.score)).compareTo((new Double(option.score)));
-		}
-		
-		/**
-		 * A toString for the option (for debugging).
-		 */
-		public String toString() {
-			String output = "";
-			output += "Option:\n";
-			output += "\tPoint: " + this.point.toString() + "\n";
-			output += "\tRotation: " + this.rot + "\n";
-			output += "\tScore: " + this.score;
-			
-			return output;
-		}
+	public void printBoard() {
+		//one print, rather than one per square
+		System.out.print(boardString());
 	}
 	
 	/**
-	 * Print the board.
+	 * Draw the board as text, one line per row from the
+	 * top down, with 1 for a filled square.
+	 * @return the drawing
 	 */
-	public void printBoard() {
-		for(int y=board.length-1; y>=0; y--) {
-			for(int x=0; x<board[y].length; x++) {
-				if( board[y][x] == 0 ) {
+	public String boardString() {
+		StringBuilder sb = new StringBuilder(board.height * (board.width + 2));
+		for(int y=board.height-1; y>=0; y--) {
+			for(int x=0; x<board.width; x++) {
+				if( ! board.isFilled(x, y) ) {
 					
-					if( y == 19) {
-						System.out.print("_");
+					if( y == visibleRows) {
+						sb.append('_');
 					} else {
-						System.out.print(" ");
+						sb.append(' ');
 					}
 				} else {
-					System.out.print("1");
+					sb.append('1');
 				}
 			}
-			System.out.println("|");
+			sb.append('|').append(System.lineSeparator());
 		}
+		return sb.toString();
 	}
 	
 	/**
 	 * A method to find the best next move and then make it. It
-	 * goes through all possible moves and scores them, and then
-	 * sorts that list.
+	 * goes through all possible moves, scores them, and keeps
+	 * the best one. Ties go to the move found last.
 	 * 
+	 * No objects are created while searching: every move is
+	 * tried with the same scratch piece (see findMoves).
+	 * 
+	 * If the game has a cache, the move is looked up there
+	 * first, and stored there if it has to be found.
 	 * 
 	 * @return an array with the displacement of the distance
 	 * and the rotation of the current Piece to move it to the
 	 * best location.
 	 */
-	@SuppressWarnings("unchecked")
 	public int[] makeMove() {
-		//an array list of the moves
-		ArrayList<Option> moves =new ArrayList<Option>();
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		int[] move = greedyMove();
+		Metrics.recordSince(Metrics.Timer.MAKE_MOVE, start);
+		return move;
+	}
+	
+	/**
+	 * Find the best move, as for makeMove(), and make it.
+	 * @return the displacement and rotation of the move, or null
+	 */
+	int[] greedyMove() {
+		int type = currentPiece.type;
 		
-		int currentType = this.currentPiece.type;
+		//use the move from the cache, if it has one
+		if( cache != null && reachability == null ) {
+			int move = cache.get(board, type);
+			if( move == DecisionCache.NO_MOVE ) {
+				this.over = true;
+				return null;
+			} else if( move != DecisionCache.MISS ) {
+				return makeMove(DecisionCache.moveX(move), DecisionCache.moveRotation(move));
+			}
+		}
 		
-		/*
-		 * Drop a piece of this type at every possible
-		 * location on the board.
-		 */
-		for(int i=0; i<board[0].length; i++) {
-			for(int r=0; r<4; r++) {
-				//create the point
-				Piece newPiece = new Piece(currentType, new Point(i,18), this.AI_CONSTANTS);
-				
-				double score=0;
-				
-				//move to the location, rotate, and drop
-				newPiece.rotateTo(r);
-				newPiece.drop(board);
-				
-				//if the piece is on the board, then store it
-				if( newPiece.isOnBoard(10,19) ) {
-					//set score
-					score += newPiece.score(board);
-					//add the option to th emoves list
-					moves.add(new Option(new Point(i, 18), r, score));
-				} else {
-					//piece is off board, we don't care about it
-				}
+		int moves = findMoves(board, type);
+		
+		//the best move found so far
+		boolean found = false;
+		int bestX = 0;
+		int bestY = 0;
+		int bestRot = 0;
+		double bestScore = 0;
+		
+		for(int m=0; m<moves; m++) {
+			//keep it if it is the best so far
+			if( !found || moveScores[m] >= bestScore ) {
+				found = true;
+				bestX = moveX[m];
+				bestY = moveY[m];
+				bestRot = moveRotations[m];
+				bestScore = moveScores[m];
 			}
 		}
 		
-		//sort the moves, last element will ahve highest score, like we want
-		Collections.sort(moves);
+		//store the move for other games with this board
+		if( cache != null && reachability == null ) {
+			cache.put(board, type, found ? DecisionCache.move(bestX, bestRot) : DecisionCache.NO_MOVE);
+		}
 		
 		//if we can get a move, get it
-		if( moves.size() >0) {
-			//get best move
-			Option best = moves.get(moves.size()-1);
-			placePiece(best.point, best.rot);
-			//return array of displacement for distance and rotation
-			int[] returnArray ={ 4-best.point.x, best.rot };
-			return returnArray;
+		if( found ) {
+			return reachability != null ? makeMove(bestX, bestY, bestRot) : makeMove(bestX, bestRot);
 		//else, no move on board, just end game
 		} else {
 			//System.out.println("hit");
@@ -266,58 +370,342 @@ public class Tetris {
 	}
 	
 	/**
-	 * Set the current piece at a given location and
-	 * add it to the board.
-	 * @param point the specified point
-	 * @param rot the specified rotation
+	 * A method to find the best next move, looking ahead at
+	 * the pieces that come after the current one, and then
+	 * make it. The search is done by the beam search of this
+	 * game, if it has one; otherwise, or with no pieces to look
+	 * at, this is the same as makeMove().
+	 * 
+	 * @param preview the types of the pieces after the current one, in order
+	 * @param count how many of the preview pieces are known
+	 * @return the displacement and rotation of the current
+	 * Piece, as for makeMove(), or null if the game is over
 	 */
-	public void placePiece(Point point, int rot) {
-		currentPiece.center = point;
-		currentPiece.rotateTo(rot);
-		currentPiece.add(board);
+	public int[] makeMove(int[] preview, int count) {
+		if( search == null || count == 0 ) {
+			return makeMove();
+		}
+		
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		int[] best = search.search(this, currentPiece.type, preview, count);
+		int[] move = null;
+		if( best == null ) {
+			this.over = true;
+		} else {
+			move = reachability != null ? makeMove(best[0], best[2], best[1]) : makeMove(best[0], best[1]);
+		}
+		Metrics.recordSince(Metrics.Timer.MAKE_MOVE, start);
+		return move;
 	}
 	
 	/**
-	 * Remove tetrises from the board, move all other
-	 * blocks down, and t hen increment the tetris counter.
+	 * Place the current piece at the given move, and work
+	 * out the keys for it.
+	 * @param x the column of the center of the piece
+	 * @param rot the rotation of the piece
+	 * @return an array of the displacement and rotation of the move
 	 */
-	public void tetrisify() {
-		int linesCleared = 0;
+	int[] makeMove(int x, int rot) {
+		placePiece(x, rot);
+		Metrics.count(Metrics.Counter.PIECES, 1);
+		//return array of displacement for distance and rotation
+		int[] returnArray ={ DROP_POINT.x-x, rot };
+		return returnArray;
+	}
+	
+	/**
+	 * Place the current piece at a placement found by the
+	 * reachability search, and work out the keys for it.
+	 * @param x the column of the center of the piece
+	 * @param y the row of the center of the piece
+	 * @param rot the rotation of the piece
+	 * @return an array of the displacement and rotation of the move
+	 */
+	int[] makeMove(int x, int y, int rot) {
+		//the keys come from the search of this board, which has
+		//usually just been done
+		int type = currentPiece.type;
+		reachability.search(board, type, DROP_POINT.x, DROP_POINT.y);
+		if( keys.length < board.width * board.height ) {
+			keys = new int[4 * board.width * board.height];
+		}
+		keyCount = reachability.keys(board, type, reachability.state(x, y, rot), keys);
 		
-		for(int row=0; row< board.length; row++) {
-			int sum=0;
+		placePiece(x, y, rot);
+		Metrics.count(Metrics.Counter.PIECES, 1);
+		int[] returnArray ={ DROP_POINT.x-x, rot };
+		return returnArray;
+	}
+	
+	/**
+	 * Find and score every move of a piece of the given type
+	 * on the given board. The column, rotation and score of
+	 * each move that lands on the board are stored in moveX,
+	 * moveRotations and moveScores, by column and then by
+	 * rotation.
+	 * 
+	 * Rotations with the same footprint (see PieceShape) land on
+	 * the same squares, so only the distinct rotations are dropped
+	 * and have the parts of their score worked out. Every rotation
+	 * is then scored from those parts, since the height part of
+	 * the score depends on where the center of the piece is. This
+	 * only holds while the stack is clear of the drop area; once
+	 * it isn't, every rotation is dropped.
+	 * 
+	 * Moves are scored by an Evaluator made from the AI constants.
+	 * With the usual four constants that is the score Piece.score
+	 * gives; more constants weigh features of the board after the
+	 * move, worked out once per distinct landing. The moves are
+	 * laid out in candidates, a lane of each feature to a move,
+	 * and scored together.
+	 * 
+	 * @param board the board to try the moves on
+	 * @param type the type of the piece
+	 * @return the number of moves found
+	 */
+	int findMoves(Board board, int type) {
+		//the scratch piece and arrays used to try each move
+		if( searchPiece == null ) {
+			searchPiece = new Piece(type, this.DROP_POINT);
+			searchPiece.setBoardSize(board.width, board.height);
+			landings = new int[4][board.width];
+			whitespaces = new int[4][board.width];
+			neighborPoints = new double[4][board.width];
+			lines = new int[4][board.width];
+			boardFeatures = new double[4*board.width*Evaluator.FEATURES];
+			candidates = new Candidates(4*board.width);
+			moveX = candidates.x;
+			moveY = candidates.y;
+			moveRotations = candidates.rotation;
+			moveScores = candidates.score;
+		}
+		if( this.AI_CONSTANTS != null && this.AI_CONSTANTS.length > 0 ) {
+			searchPiece.AI_CONSTANTS = this.AI_CONSTANTS;
+		}
+		if( evaluatorConstants != searchPiece.AI_CONSTANTS ) {
+			evaluator = Evaluator.fromConstants(searchPiece.AI_CONSTANTS);
+			evaluatorConstants = searchPiece.AI_CONSTANTS;
+		}
 		
-			for(int col=0; col<board[row].length; col++) {
-				sum+= board[row][col];
-			}
-			
-			if( sum == 0 ) {
-				continue;
-			} else if (sum == board[row].length) { // ie 10
+		//the highest block is the same for every move
+		int highest = searchPiece.highestPiece(board);
+		if( reachability != null ) {
+			return findReachableMoves(board, type, highest);
+		}
+		
+		//only drop distinct rotations if nothing is near the drop area
+		boolean distinctOnly = board.maxHeight <= DROP_POINT.y-2;
+		
+		/*
+		 * Drop a piece of this type at every possible location
+		 * on the board, and store where it lands and the parts
+		 * of its score. Only try columns where the piece fits
+		 * across the board.
+		 */
+		int[] rotations = distinctOnly ? PieceShape.DISTINCT_ROTATIONS[type] : PieceShape.ALL_ROTATIONS;
+		for(int r: rotations) {
+			PieceShape shape = PieceShape.get(type, r);
 			
-				//need to clear line
-				for(int col=0; col<board[row].length; col++) {
-					board[row][col]=0;
+			for(int left=0; left<board.width; left++) {
+				landings[r][left] = NO_LANDING;
+				if( left + shape.width() > board.width ) {
+					continue;
 				}
 				
-				//note
-				linesCleared++;
+				//move to the location, rotate, and drop
+				searchPiece.reset(type, left - shape.minX, DROP_POINT.y);
+				searchPiece.rotateTo(r);
+				searchPiece.drop(board);
 				
-				//move everything down
-				for(int row2=row+1; row2< board.length; row2++) {
-					for(int col=0; col<board[row].length; col++) {
-						board[row2-1][col]=board[row2][col];
+				//if the piece is on the board, then store it
+				if( searchPiece.isOnBoard(board.width, visibleRows) ) {
+					landings[r][left] = searchPiece.center.y + shape.minY;
+					whitespaces[r][left] = searchPiece.whitespace(board);
+					neighborPoints[r][left] = searchPiece.neighborPoints(board);
+					lines[r][left] = searchPiece.tetrises(board);
+					if( evaluator.usesBoard() ) {
+						System.arraycopy(evaluator.boardFeatures(board, searchPiece), Evaluator.FIRST_BOARD_FEATURE,
+								boardFeatures, (r*board.width + left)*Evaluator.FEATURES + Evaluator.FIRST_BOARD_FEATURE,
+								Evaluator.FEATURES - Evaluator.FIRST_BOARD_FEATURE);
 					}
+				} else {
+					//piece is off board, we don't care about it
+				}
+			}
+		}
+		
+		//now lay out every move from the dropped pieces, a lane
+		//of each feature to a move, and score them all at once
+		double[][] features = candidates.features;
+		int moves = 0;
+		for(int i=0; i<board.width; i++) {
+			for(int r=0; r<4; r++) {
+				//find the dropped piece covering the same squares
+				PieceShape shape = PieceShape.get(type, r);
+				int c = distinctOnly ? PieceShape.CANONICAL_ROTATIONS[type][r] : r;
+				int left = i + shape.minX;
+				if( left < 0 || left + shape.width() > board.width || landings[c][left] == NO_LANDING ) {
+					continue;
 				}
 				
-				//re check current row
-				row--;
+				//put the center where this rotation would land
+				int y = landings[c][left] - shape.minY;
+				moveX[moves] = i;
+				moveY[moves] = y;
+				moveRotations[moves] = r;
+				features[Evaluator.HEIGHT][moves] = highest == 0 ? 0 : highest - y;
+				features[Evaluator.WHITESPACE][moves] = whitespaces[c][left];
+				features[Evaluator.NEIGHBORS][moves] = neighborPoints[c][left];
+				features[Evaluator.LINES][moves] = lines[c][left];
+				if( evaluator.usesBoard() ) {
+					int at = (c*board.width + left)*Evaluator.FEATURES;
+					for(int f=Evaluator.FIRST_BOARD_FEATURE; f<Evaluator.FEATURES; f++) {
+						features[f][moves] = boardFeatures[at + f];
+					}
+				}
+				moves++;
 			}
+		}
+		candidates.count = moves;
+		evaluator.score(candidates);
+		
+		//the score is taken relative to the drop height
+		for(int m=0; m<moves; m++) {
+			moveScores[m] -= DROP_POINT.y;
+		}
+		
+		Metrics.count(Metrics.Counter.CANDIDATES, moves);
+		return moves;
+	}
+	
+	/**
+	 * Find and score every placement of a piece of the given type
+	 * that it can reach on the given board, with tucks and spins,
+	 * as findMoves does for the moves dropped straight down.
+	 * @param board the board to try the moves on
+	 * @param type the type of the piece
+	 * @param highest the highest block of the board
+	 * @return the number of moves found
+	 */
+	int findReachableMoves(Board board, int type, int highest) {
+		int placements = reachability.search(board, type, DROP_POINT.x, DROP_POINT.y);
+		if( candidates.capacity() < placements ) {
+			candidates = new Candidates(4 * board.width * board.height);
+			moveX = candidates.x;
+			moveY = candidates.y;
+			moveRotations = candidates.rotation;
+			moveScores = candidates.score;
+		}
 		
+		//lay out every placement on the board, a lane of each
+		//feature to a move, and score them all at once
+		double[][] features = candidates.features;
+		int moves = 0;
+		for(int p=0; p<placements; p++) {
+			int state = reachability.placement(type, p);
+			int x = reachability.x(state);
+			int y = reachability.y(state);
+			int r = reachability.rotation(state);
+			searchPiece.reset(type, x, y);
+			searchPiece.rotateTo(r);
+			if( !searchPiece.isOnBoard(board.width, visibleRows) ) {
+				continue;
+			}
+			
+			moveX[moves] = x;
+			moveY[moves] = y;
+			moveRotations[moves] = r;
+			features[Evaluator.HEIGHT][moves] = highest == 0 ? 0 : highest - y;
+			features[Evaluator.WHITESPACE][moves] = searchPiece.whitespace(board);
+			features[Evaluator.NEIGHBORS][moves] = searchPiece.neighborPoints(board);
+			features[Evaluator.LINES][moves] = searchPiece.tetrises(board);
+			if( evaluator.usesBoard() ) {
+				double[] after = evaluator.boardFeatures(board, searchPiece);
+				for(int f=Evaluator.FIRST_BOARD_FEATURE; f<Evaluator.FEATURES; f++) {
+					features[f][moves] = after[f];
+				}
+			}
+			moves++;
+		}
+		candidates.count = moves;
+		evaluator.score(candidates);
 		
+		//the score is taken relative to the drop height
+		for(int m=0; m<moves; m++) {
+			moveScores[m] -= DROP_POINT.y;
 		}
+		
+		Metrics.count(Metrics.Counter.CANDIDATES, moves);
+		return moves;
+	}
+	
+	/**
+	 * Set the current piece at a given location and
+	 * add it to the board.
+	 * @param point the specified point
+	 * @param rot the specified rotation
+	 */
+	public void placePiece(Point point, int rot) {
+		placePiece(point.x, rot);
+	}
+	
+	/**
+	 * Set the current piece at the given column, starting
+	 * from the drop height, and add it to the board.
+	 * @param x the column of the center of the piece
+	 * @param rot the specified rotation
+	 */
+	public void placePiece(int x, int rot) {
+		currentPiece.center.setLocation(x, DROP_POINT.y);
+		currentPiece.rotateTo(rot);
+		currentPiece.add(board);
+		//note the rows of the piece for tetrisify
+		notePlaced();
+	}
+	
+	/**
+	 * Set the current piece at the given column and row and
+	 * add it to the board. The piece must be able to get there,
+	 * and must not be able to move down (see Reachability).
+	 * @param x the column of the center of the piece
+	 * @param y the row of the center of the piece
+	 * @param rot the specified rotation
+	 */
+	public void placePiece(int x, int y, int rot) {
+		currentPiece.center.setLocation(x, y);
+		currentPiece.rotateTo(rot);
+		currentPiece.add(board);
+		notePlaced();
+	}
+	
+	/**
+	 * Note the rows of the current piece, which has just been
+	 * added to the board, so tetrisify only checks those rows.
+	 */
+	void notePlaced() {
+		lastBottom = currentPiece.center.y + currentPiece.shape.minY;
+		lastTop = currentPiece.center.y + currentPiece.shape.maxY;
+	}
+	
+	/**
+	 * Remove tetrises from the board, move all other
+	 * blocks down, and t hen increment the tetris counter.
+	 * 
+	 * Only the rows of the last piece added can be full, so
+	 * only those are checked, and all of them are removed in
+	 * one pass over the board.
+	 */
+	public void tetrisify() {
+		int linesCleared = board.removeFullRows(lastBottom, lastTop);
+		
+		//the piece's rows have been checked
+		lastBottom = 0;
+		lastTop = -1;
 	
 		tetrises+=linesCleared;
+		if( linesCleared > 0 ) {
+			Metrics.count(Metrics.Counter.LINES, linesCleared);
+		}
 	}
 	
 
@@ -1,6 +1,9 @@
 package tetris;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A class for a Tetris AI backend.
@@ -14,6 +17,33 @@ public class TetrisAI {
 	
 	//constants for the ai
 	public double[] AI_CONSTANTS;
+	
+	//how many pieces after the current one the ai can see,
+	//and how many boards its search keeps after each piece.
+	//with no preview, the ai only looks at the current piece
+	public int PREVIEW;
+	public int BEAM_WIDTH;
+	
+	//the cache of moves shared with other games, if any
+	public DecisionCache cache;
+	
+	//where a replay of each game is written, if anywhere
+	public ReplayWriter replays;
+	
+	//the number of columns of the board, and the number of
+	//rows the game is played in
+	public int WIDTH = Tetris.BOARD_DIMENSIONS.width;
+	public int ROWS = Tetris.BOARD_DIMENSIONS.height - Tetris.VERTICAL_BUFFER;
+	
+	//the most pieces a game is played for, and the most time
+	//in nanoseconds, or 0 for no limit. a game stopped by either
+	//is censored (see GameResult)
+	public long MAX_PIECES;
+	public long MAX_NANOS;
+	
+	//whether moves can tuck and spin under overhangs,
+	//rather than only drop straight down
+	public boolean TUCKS;
 
 	/**
 	 * A constructor for the class, sets
@@ -41,6 +71,81 @@ public class TetrisAI {
 		this.AI_CONSTANTS = aiConstants;
 	}
 	
+	/**
+	 * Let the AI see the given number of pieces after the
+	 * current one, and search them with a beam search
+	 * keeping the given number of boards after each piece.
+	 * @param preview the number of pieces to see, or 0 for none
+	 * @param beamWidth the number of boards to keep
+	 */
+	public void setPreview(int preview, int beamWidth) {
+		this.PREVIEW = preview;
+		this.BEAM_WIDTH = beamWidth;
+	}
+	
+	/**
+	 * Share the moves of the games this AI plays through the
+	 * given cache. The cache must be for the AI constants and
+	 * the board size, and is only used when there is no preview
+	 * to search.
+	 * @param cache the cache, or null for none
+	 */
+	public void setCache(DecisionCache cache) {
+		if( cache != null && this.AI_CONSTANTS != null && !cache.isFor(this.AI_CONSTANTS) ) {
+			throw new IllegalArgumentException("cache is for other AI constants");
+		}
+		this.cache = cache;
+	}
+	
+	/**
+	 * Play on a board of the given size, rather than the
+	 * default 10 columns by 19 rows.
+	 * @param width the number of columns
+	 * @param rows the number of rows the game is played in
+	 */
+	public void setBoardSize(int width, int rows) {
+		this.WIDTH = width;
+		this.ROWS = rows;
+	}
+	
+	/**
+	 * Stop each game after the given number of pieces or the
+	 * given time, whichever comes first, so one very good game
+	 * can't run for ever.
+	 * @param maxPieces the most pieces to play, or 0 for no limit
+	 * @param maxNanos the most time to play for in nanoseconds, or 0 for no limit
+	 */
+	public void setBudget(long maxPieces, long maxNanos) {
+		this.MAX_PIECES = maxPieces;
+		this.MAX_NANOS = maxNanos;
+	}
+	
+	/**
+	 * Write a replay of each game this AI plays to the
+	 * given writer, which can be shared with other AIs.
+	 * @param replays the writer, or null for no replays
+	 */
+	public void setReplays(ReplayWriter replays) {
+		if( replays != null && TUCKS ) {
+			throw new IllegalStateException("replays only hold straight drops, not tucks");
+		}
+		this.replays = replays;
+	}
+	
+	/**
+	 * Let moves tuck and spin under overhangs, with soft
+	 * drops (see Tetris.setTucks). Replays only hold the
+	 * column and rotation of each move, so they can't be
+	 * written as well.
+	 * @param tucks whether to find every reachable placement
+	 */
+	public void setTucks(boolean tucks) {
+		if( tucks && replays != null ) {
+			throw new IllegalStateException("replays only hold straight drops, not tucks");
+		}
+		this.TUCKS = tucks;
+	}
+	
 	/**
 	 * A method to play the game. Creates
 	 * random pieces and adds them to the board
@@ -49,25 +154,182 @@ public class TetrisAI {
 	 *
 	 * @return the number of pieces played
 	 */
-	public int playGame() throws Exception{	
-		Tetris t;	
-		//create a new tetris game
+	public long playGame() throws Exception{	
+		//play with an unseeded random number generator
+		long seed = new Random().nextLong();
+		return play(newGame(), new UniformPieceSource(seed), replay(seed), deadline(System.nanoTime(), 0), null);
+	}
+	
+	/**
+	 * A method to play the game with pieces drawn from
+	 * a generator with the given seed, so the same seed
+	 * always plays the same game.
+	 *
+	 * @param seed the seed for the pieces
+	 * @return the result of the game
+	 */
+	public GameResult playGame(long seed) throws InterruptedException {
+		return playGame(seed, new UniformPieceSource(seed));
+	}
+	
+	/**
+	 * A method to play the game with pieces from the
+	 * given source, until the game ends or the source
+	 * runs out of pieces.
+	 *
+	 * @param seed the seed of the source, to report in the result
+	 * @param source the source of the pieces
+	 * @return the result of the game
+	 */
+	public GameResult playGame(long seed, PieceSource source) throws InterruptedException {
+		return playGame(seed, source, 0, null);
+	}
+	
+	/**
+	 * A method to play the game with pieces from the given
+	 * source, which can also be stopped by a deadline or a
+	 * flag, as well as by our budget.
+	 *
+	 * @param seed the seed of the source, to report in the result
+	 * @param source the source of the pieces
+	 * @param deadline the System.nanoTime to stop at, or 0 for none
+	 * @param stop a flag that stops the game once set, or null for none
+	 * @return the result of the game
+	 */
+	GameResult playGame(long seed, PieceSource source, long deadline, AtomicBoolean stop) throws InterruptedException {
+		long start = System.nanoTime();
+		Tetris t = newGame();
+		long pieces = play(t, source, replay(seed), deadline(start, deadline), stop);
+		return new GameResult(seed, pieces, t.tetrises, System.nanoTime() - start, !t.over);
+	}
+	
+	/**
+	 * The deadline of a game started at the given time: the
+	 * sooner of the given deadline and the end of our budget.
+	 *
+	 * @param start the System.nanoTime the game started at
+	 * @param deadline another deadline, or 0 for none
+	 * @return the deadline, or 0 for none
+	 */
+	long deadline(long start, long deadline) {
+		if( MAX_NANOS <= 0 ) {
+			return deadline;
+		}
+		long end = start + MAX_NANOS;
+		return deadline == 0 || end - deadline < 0 ? end : deadline;
+	}
+	
+	/**
+	 * Create a new tetris game of our board size, with
+	 * our AI constants if we have them.
+	 *
+	 * @return the new game
+	 */
+	Tetris newGame() {
+		Tetris t;
 		if( this.AI_CONSTANTS != null && this.AI_CONSTANTS.length > 0)
-			t = new Tetris(this.AI_CONSTANTS);
+			t = new Tetris(WIDTH, ROWS, this.AI_CONSTANTS);
 		else
-			t = new Tetris();
+			t = new Tetris(WIDTH, ROWS);
+		
+		//search the preview pieces, if we can see any
+		if( PREVIEW > 0 ) {
+			t.search = new BeamSearch(PREVIEW + 1, BEAM_WIDTH, 0);
+		}
+		if( cache != null && !cache.isFor(t) ) {
+			throw new IllegalArgumentException("cache is for a board of another size");
+		}
+		t.cache = cache;
+		t.setTucks(TUCKS);
+		return t;
+	}
+	
+	/**
+	 * Start a replay of a game, if we are writing them.
+	 *
+	 * @param seed the seed of the game
+	 * @return the replay, or null
+	 */
+	Replay replay(long seed) {
+		return replays != null ? new Replay(seed) : null;
+	}
+	
+	/**
+	 * Play a game until it ends, with pieces from
+	 * the given source. The pieces are taken from the
+	 * source as they come into the preview. The game
+	 * stops early, and isn't over, if it plays MAX_PIECES,
+	 * reaches the deadline, or is stopped.
+	 *
+	 * @param t the game to play
+	 * @param source the source of the pieces
+	 * @param replay where to record the game, or null
+	 * @param deadline the System.nanoTime to stop at, or 0 for none
+	 * @param stop a flag that stops the game once set, or null for none
+	 * @return the number of pieces played
+	 */
+	long play(Tetris t, PieceSource source, Replay replay, long deadline, AtomicBoolean stop) throws InterruptedException {
 		//set piece counter to 0
-		int pieces = 0;
-		//random number generator
-		Random rnd= new Random();
+		long pieces = 0;
+		
+		//the current piece and the preview, and how many
+		//of them we have taken from the source
+		int[] upcoming = new int[PREVIEW + 1];
+		int[] preview = new int[PREVIEW];
+		int known = 0;
+		boolean exhausted = false;
 		
 		//while game isn't over
 		while(!t.over) {
+			//stop if we are out of budget
+			if( MAX_PIECES > 0 && pieces >= MAX_PIECES ) {
+				break;
+			}
+			if( deadline != 0 && System.nanoTime() - deadline >= 0 ) {
+				break;
+			}
+			if( stop != null && stop.get() ) {
+				break;
+			}
+			
+			//fill up the preview from the source
+			while( known < upcoming.length && !exhausted ) {
+				int next = source.next();
+				if( next < 0 ) {
+					exhausted = true;
+				} else {
+					upcoming[known++] = next;
+				}
+			}
+			//stop if there are no pieces left
+			if( known == 0 ) {
+				break;
+			}
+			
 			//add piece, make the move, and remove tetrises
-			t.addPiece(rnd.nextInt(7));
-			t.makeMove();
+			t.addPiece(upcoming[0]);
+			int[] moves;
+			if( PREVIEW > 0 ) {
+				System.arraycopy(upcoming, 1, preview, 0, known-1);
+				moves = t.makeMove(preview, known-1);
+			} else {
+				moves = t.makeMove();
+			}
 			t.tetrisify();
 			
+			//record where it went
+			if( replay != null ) {
+				if( moves != null ) {
+					replay.placed(upcoming[0], t.DROP_POINT.x - moves[0], moves[1]);
+				} else {
+					replay.failed(upcoming[0]);
+				}
+			}
+			
+			//the next piece is now the current one
+			System.arraycopy(upcoming, 1, upcoming, 0, known-1);
+			known--;
+			
 			//show the board
 			//t.printBoard();
 
@@ -78,10 +340,22 @@ public class TetrisAI {
 			//increment pieces
 			pieces++;
 			
-			//sleep
-			Thread.currentThread().sleep(WAIT_TIME);
+			//sleep, if we are meant to
+			if( WAIT_TIME > 0 ) {
+				Thread.sleep(WAIT_TIME);
+			}
 		}
 
+		Metrics.count(Metrics.Counter.GAMES, 1);
+		//write the replay
+		if( replay != null ) {
+			replay.finish(t);
+			try {
+				replays.append(replay);
+			} catch (IOException e) {
+				throw new UncheckedIOException("could not write replay", e);
+			}
+		}
 		//return the number of pieces
 		return pieces;
 	}
@@ -1,8 +1,11 @@
 package tetris;
 
+import java.awt.AWTException;
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.awt.Robot;
 import java.awt.event.KeyEvent;
+import java.io.IOException;
 
 /**
  * A class to play tetris online using
@@ -18,6 +21,15 @@ public class TetrisAIPlayer {
 	 */
 	public int PIECE_X;
 	public int PIECE_Y;
+	/**
+	 * Preview_X and preview_Y tell us where to
+	 * grab the screen pixels for the pieces
+	 * shown after the falling piece, in order.
+	 * If there are none, the AI only looks at
+	 * the falling piece.
+	 */
+	public int[] PREVIEW_X = {};
+	public int[] PREVIEW_Y = {};
 	/**
 	 * Pieces tells us the colors of the pieces
 	 * of the game, and piecestrings tells us
@@ -25,6 +37,22 @@ public class TetrisAIPlayer {
 	 */
 	public Color[] pieces;
 	public String[] pieceStrings;
+	/**
+	 * How far off each channel of a screen color can be
+	 * from a piece color and still match it, and how far
+	 * from each read pixel to take four more pixels to
+	 * vote on its piece (0 to only read the pixel).
+	 */
+	public int COLOR_TOLERANCE;
+	public int SAMPLE_SPREAD;
+	/**
+	 * The classifier for the piece colors, built the first
+	 * time it is needed, and the scratch space for the
+	 * pixels and votes of each read.
+	 */
+	ColorClassifier classifier;
+	int[] samples = new int[5];
+	int[] votes;
 	
 	/**
 	 * The wait times for the AI player.
@@ -32,8 +60,71 @@ public class TetrisAIPlayer {
 	 */
 	public int WAIT_TIME;
 	public int KEY_TIME;
+	/**
+	 * How long to wait between looks at the screen
+	 * while waiting for a new piece.
+	 */
+	public int POLL_TIME;
 	//the tetris game
 	public Tetris tetris;
+	/**
+	 * Where the screen is read from. If not set, it is
+	 * captured with the robot the game is played with.
+	 */
+	public FrameSource frames;
+	/**
+	 * The poller reading the screen in the last game,
+	 * which measures how long each capture takes.
+	 */
+	public FramePoller poller;
+	/**
+	 * Where the keys are sent. If not set, they are
+	 * pressed with the robot the game is played with.
+	 */
+	public KeyOutput keys;
+	KeyOutput output;
+	/**
+	 * Whether to send the keys of each piece on their own
+	 * thread while working on the next piece (see
+	 * playPipelined), and the scheduler that sent them in
+	 * the last game.
+	 */
+	public boolean PIPELINED;
+	public KeyScheduler scheduler;
+	/**
+	 * The number of preview pieces read with the last piece.
+	 */
+	int known;
+	/**
+	 * The scanner for the whole playfield, which checks the
+	 * model against the screen with each new piece, or null
+	 * to trust the model. The playfield is captured by its
+	 * own poller.
+	 */
+	public PlayfieldScanner playfield;
+	FramePoller playfieldPoller;
+	/**
+	 * Set to stop the game from another thread.
+	 */
+	volatile boolean stopped;
+	/**
+	 * Where the pieces, moves, keys and resyncs of each game
+	 * are logged, or null to not log them. Nothing is printed
+	 * while playing; read the log with EventLogViewer.
+	 */
+	public EventLog log;
+	/**
+	 * When the last piece was found, from System.nanoTime.
+	 */
+	long detected;
+	/**
+	 * Where a replay of each game is written, or null to not
+	 * write them, and the replay of the game being played. A
+	 * replay only plays back to the same board if the model
+	 * was never resynced (see EventLog for those).
+	 */
+	public ReplayWriter replays;
+	Replay replay;
 	
 	/**
 	 * A constructor for the AI Player.
@@ -64,6 +155,13 @@ public class TetrisAIPlayer {
 	*/
 	public void setWaitTime(int time) { this.WAIT_TIME = time; }
 	public void setKeyTime(int time) { this.KEY_TIME = time; }
+	public void setPollTime(int time) { this.POLL_TIME = time; }
+
+	/**
+	* setters for how colors are matched to pieces
+	*/
+	public void setColorTolerance(int tolerance) { this.COLOR_TOLERANCE = tolerance; this.classifier = null; }
+	public void setSampleSpread(int spread) { this.SAMPLE_SPREAD = spread; }
 
 	/**
 	* setters for the pixels to scrape
@@ -72,69 +170,274 @@ public class TetrisAIPlayer {
 	public void setPieceX(int x) { this.PIECE_X = x;}
 	public void setPieceY(int y) { this.PIECE_Y = y;}
 
+	/**
+	 * Set the pixels of the preview pieces, and search them
+	 * with a beam search keeping the given number of boards
+	 * after each piece. Each search is given WAIT_TIME to run.
+	 */
+	public void setPreview(int[] xs, int[] ys, int beamWidth) {
+		this.PREVIEW_X = xs;
+		this.PREVIEW_Y = ys;
+		tetris.search = xs.length == 0 ? null : new BeamSearch(xs.length + 1, beamWidth, 0);
+	}
+
+	/**
+	* setter for where the screen is read from
+	*/
+	public void setFrameSource(FrameSource frames) { this.frames = frames; }
+
+	/**
+	* setters for where the keys go, and whether they are pipelined
+	*/
+	public void setKeyOutput(KeyOutput keys) { this.keys = keys; }
+	public void setPipelined(boolean pipelined) { this.PIPELINED = pipelined; }
+
+	/**
+	* setter for the playfield scanner
+	*/
+	public void setPlayfield(PlayfieldScanner playfield) { this.playfield = playfield; }
+
+	/**
+	* setter for the event log
+	*/
+	public void setEventLog(EventLog log) { this.log = log; }
+
+	/**
+	* setter for where replays are written
+	*/
+	public void setReplays(ReplayWriter replays) { this.replays = replays; }
+
+	/**
+	* setter for whether moves can tuck and spin under overhangs,
+	* with soft drops (see Tetris.setTucks). replays can't be
+	* written as well, since they only hold straight drops
+	*/
+	public void setTucks(boolean tucks) { tetris.setTucks(tucks); }
+
+	/**
+	 * The region of the screen holding every pixel we read:
+	 * the falling piece and the preview pieces.
+	 * @return the region
+	 */
+	Rectangle region() {
+		int[] xs = new int[PREVIEW_X.length + 1];
+		int[] ys = new int[PREVIEW_Y.length + 1];
+		xs[0] = PIECE_X;
+		ys[0] = PIECE_Y;
+		System.arraycopy(PREVIEW_X, 0, xs, 1, PREVIEW_X.length);
+		System.arraycopy(PREVIEW_Y, 0, ys, 1, PREVIEW_Y.length);
+		Rectangle region = FramePoller.bounds(xs, ys);
+		//with room for the pixels around them
+		region.grow(SAMPLE_SPREAD, SAMPLE_SPREAD);
+		return region;
+	}
+
+	/**
+	 * Get the classifier for the piece colors, building
+	 * it if it hasn't been built.
+	 * @return the classifier
+	 */
+	ColorClassifier classifier() {
+		if( classifier == null ) {
+			classifier = new ColorClassifier(pieces, COLOR_TOLERANCE);
+			votes = new int[pieces.length];
+		}
+		return classifier;
+	}
+
+	/**
+	 * Find the piece with the color of a pixel of the
+	 * last frame. If SAMPLE_SPREAD is set, the pixels that
+	 * far above, below, left and right of it vote too, and
+	 * the piece needs most of the votes.
+	 * @param x the x coordinate of the pixel
+	 * @param y the y coordinate of the pixel
+	 * @return the type of the piece, or -1 if no piece has the color
+	 */
+	int pieceAt(int x, int y) {
+		ColorClassifier classifier = classifier();
+		
+		int count = 0;
+		samples[count++] = poller.rgb(x, y);
+		if( SAMPLE_SPREAD > 0 ) {
+			samples[count++] = poller.rgb(x - SAMPLE_SPREAD, y);
+			samples[count++] = poller.rgb(x + SAMPLE_SPREAD, y);
+			samples[count++] = poller.rgb(x, y - SAMPLE_SPREAD);
+			samples[count++] = poller.rgb(x, y + SAMPLE_SPREAD);
+		}
+		return classifier.vote(samples, count, votes);
+	}
+
+	/**
+	 * Stop the game being played, such as when the game on
+	 * the screen has ended. The player stops once it is done
+	 * with the piece it is on.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Wait for a new piece to show up on the screen, and read
+	 * the preview pieces from the same frame.
+	 * @param preview where to put the preview pieces
+	 * @return the type of the new piece, or -1 if the game
+	 * was stopped
+	 */
+	int nextPiece(int[] preview) {
+		//get piece from color
+		int next=-1;
+		long start = 0;
+		
+		/*
+		 * Get the next piece.
+		 */
+		while( next==-1) {
+			if( stopped ) {
+				return -1;
+			}
+			//capture the screen, and get the color of the pixel
+			start = System.nanoTime();
+			poller.capture();
+			next = pieceAt(PIECE_X, PIECE_Y);
+		
+			if (next == -1) {
+				//System.out.println("waiting");
+				poller.pause();
+			}
+		}
+		
+		//time the look that found it
+		detected = System.nanoTime();
+		Metrics.record(Metrics.Timer.DETECTION, detected - start);
+		
+		//get the preview pieces, up to the first we don't know
+		known = 0;
+		while( known < preview.length ) {
+			//these are in the frame the piece was found in
+			int type = pieceAt(PREVIEW_X[known], PREVIEW_Y[known]);
+			if( type == -1 ) {
+				break;
+			}
+			preview[known++] = type;
+		}
+		
+		return next;
+	}
+
+	/**
+	 * Read the playfield off the screen, if we have a scanner,
+	 * and make the given board match it if it doesn't. This
+	 * catches the model going wrong, such as from a key the
+	 * game missed.
+	 * @param board the board the screen should show
+	 * @return true if the board had to be changed
+	 */
+	boolean resync(Board board) {
+		if( playfield == null ) {
+			return false;
+		}
+		playfieldPoller.capture();
+		playfield.scan(playfieldPoller, classifier());
+		if( !playfield.resync(board) ) {
+			return false;
+		}
+		if( log != null ) {
+			log.resync(board);
+		}
+		return true;
+	}
+
+	/**
+	 * Set up the screen, the keys and the search for a game,
+	 * making a robot if it is needed for either.
+	 */
+	void setUp() throws AWTException {
+		if( replays != null && tetris.reachability != null ) {
+			throw new IllegalStateException("replays only hold straight drops, not tucks");
+		}
+		stopped = false;
+		replay = replays != null ? new Replay(0) : null;
+		Robot robot = null;
+		if( frames == null || keys == null ) {
+			robot = new Robot();
+		}
+		//read the screen a region at a time
+		FrameSource source = frames != null ? frames : new RobotFrameSource(robot);
+		poller = new FramePoller(source, region(), POLL_TIME * 1000000L);
+		output = keys != null ? keys : new RobotKeyOutput(robot);
+		if( log != null ) {
+			output = log.keys(output);
+			log.gameStart(tetris.board.width, tetris.visibleRows);
+		}
+		if( playfield != null ) {
+			playfieldPoller = new FramePoller(source, playfield.region(), 0);
+		}
+		
+		//the search has to fit in the wait after each piece
+		if( tetris.search != null ) {
+			tetris.search.BUDGET_NANOS = WAIT_TIME * 1000000L;
+		}
+	}
+
 	/**
 	 * A method to play the game.
 	 *
+	 * @return the number of pieces played
 	 */
 	public int playGame() throws Exception{
-		//make a new robot
-		Robot robot =  new Robot();
+		if( PIPELINED ) {
+			return playPipelined();
+		}
+		setUp();
 		//keep track of cleared pieces
 		int clearedPieces=0;
+		//the preview pieces
+		int[] preview = new int[PREVIEW_X.length];
 		
 		//while the game isn't over, play it
 		while(!tetris.over) {
-			//get piece from color
-			int next=-1;
-			
-			/*
-			 * Get the next piece.
-			 */
-			while( next==-1) {
-				//get the color of the pixel
-				Color pieceColor = robot.getPixelColor(PIECE_X, PIECE_Y);
-				//match the color with known colors
-				for(int i=0; i<pieces.length; i++) {
-					if( pieceColor != null && pieces[i].equals(pieceColor) ) {
-						next =i;
-					}
-				}
-			
-				if (next == -1) {
-					//System.out.println("waiting");
-				}
-				//sleep
-				Thread.currentThread().sleep(KEY_TIME);
+			//wait for the next piece
+			int next = nextPiece(preview);
+			if( next == -1 ) {
+				break;
 			}
-			
-			//print out the kind of piece we got
-			System.out.println("got a " + pieceStrings[next]);
+			//check the model against the screen
+			resync(tetris.board);
+			long tetrises = tetris.tetrises;
 			
 			//add the piece to the tetris game
 			tetris.addPiece(next);
 			//make the move, and determine where the piece needs to move in the online game
-			int[] moves = tetris.makeMove();
+			int[] moves = tetris.makeMove(preview, known);
 			//remove tetrises
 			tetris.tetrisify();
-			//print the board
-			tetris.printBoard();
+			//log and record the piece and where it went
+			recordPiece(next, moves, (int) (tetris.tetrises - tetrises));
+			//stop if there was no move
+			if( moves == null ) {
+				break;
+			}
 			//increment cleared pieces
 			clearedPieces++;
 			
+			//with tucks, send the keys the search found
+			int[] tuck = tetris.moveKeys();
+			if( tuck != null ) {
+				for(int key : tuck) {
+					press(key);
+				}
+				press(KeyEvent.VK_SPACE);
+				continue;
+			}
+			
 			//move piece
 			int displacement = moves[0];
 			int rotation = moves[1];
-			
-			System.out.println("need to move: " + displacement + " rotate: " + rotation);
 
 			//rotate the piece
 			while( rotation > 0 ) {
-				System.out.println("\trotate");
-				robot.keyPress(KeyEvent.VK_UP);
-				Thread.currentThread().sleep(KEY_TIME);
-				robot.keyRelease(KeyEvent.VK_UP);
-				
-				Thread.currentThread().sleep(WAIT_TIME);
+				press(KeyEvent.VK_UP);
 				rotation--;
 			}
 
@@ -142,43 +445,198 @@ public class TetrisAIPlayer {
 			if( displacement < 0 ) {
 				//move right
 				while( displacement < 0) {
-					System.out.println("\tright");
-					robot.keyPress(KeyEvent.VK_RIGHT);
-					Thread.currentThread().sleep(KEY_TIME);
-					robot.keyRelease(KeyEvent.VK_RIGHT);
-					
-					Thread.currentThread().sleep(WAIT_TIME);
+					press(KeyEvent.VK_RIGHT);
 					displacement++;
 				}
 			} else if( displacement > 0) {
 				//move left
 				while( displacement > 0) {
-					System.out.println("\tleft");
-					robot.keyPress(KeyEvent.VK_LEFT);
-					Thread.currentThread().sleep(KEY_TIME);
-					robot.keyRelease(KeyEvent.VK_LEFT);
-					
-					Thread.currentThread().sleep(WAIT_TIME);
+					press(KeyEvent.VK_LEFT);
 					displacement--;
 				}
 			}
 			
 
 			//now, hard drop the piece
-			System.out.println("\tspace");
-			
-			robot.keyPress(KeyEvent.VK_SPACE);
-			Thread.currentThread().sleep(KEY_TIME);
-			robot.keyRelease(KeyEvent.VK_SPACE);
-			
-			//sleep
-			Thread.currentThread().sleep(WAIT_TIME);
+			press(KeyEvent.VK_SPACE);
 		}
 		
+		endGame(clearedPieces);
+		return clearedPieces;
+	}
+
+	/**
+	 * Log a piece and where it went, if there is a log, and
+	 * add it to the replay, if there is one.
+	 * @param type the type of the piece
+	 * @param moves the displacement and rotation of its move, or null if it had none
+	 * @param lines the lines it cleared
+	 */
+	void recordPiece(int type, int[] moves, int lines) {
+		if( moves == null ) {
+			if( replay != null ) {
+				replay.failed(type);
+			}
+			return;
+		}
+		int x = tetris.DROP_POINT.x - moves[0];
+		if( log != null ) {
+			log.piece(type, x, tetris.currentPiece.center.y, moves[1], lines, System.nanoTime() - detected, tetris.board.hash());
+		}
+		if( replay != null ) {
+			replay.placed(type, x, moves[1]);
+		}
+	}
+
+	/**
+	 * Count, log and write the replay of the end of a game.
+	 * @param pieces the pieces played
+	 */
+	void endGame(int pieces) throws IOException {
+		Metrics.count(Metrics.Counter.GAMES, 1);
+		if( log != null ) {
+			log.gameEnd(pieces);
+		}
+		if( replay != null ) {
+			replay.finish(tetris);
+			replays.append(replay);
+		}
+	}
+
+	/**
+	 * Press and release a key, holding it for KEY_TIME,
+	 * then wait for WAIT_TIME.
+	 * @param keyCode the key
+	 */
+	void press(int keyCode) throws InterruptedException {
+		long start = System.nanoTime();
+		output.press(keyCode);
+		Metrics.recordSince(Metrics.Timer.KEY, start);
+		Thread.sleep(KEY_TIME);
+		start = System.nanoTime();
+		output.release(keyCode);
+		Metrics.recordSince(Metrics.Timer.KEY, start);
 		
-		return 0;
+		Thread.sleep(WAIT_TIME);
 	}
-	
-	
 
+	/**
+	 * A method to play the game, with the keys of each piece
+	 * sent on their own thread while the bot gets on with the
+	 * next piece.
+	 * 
+	 * The keys are timed as in playGame, but by a KeyScheduler,
+	 * so working out the next move happens while they are being
+	 * sent rather than between them. If the bot can see
+	 * the preview, it also places the next piece in its model and
+	 * finds its move while the keys are sent. When that piece shows
+	 * up its keys go out straight away, unless it isn't the piece
+	 * that was expected, in which case the model is put back and
+	 * the move is found again.
+	 *
+	 * @return the number of pieces played
+	 */
+	public int playPipelined() throws Exception {
+		setUp();
+		scheduler = new KeyScheduler(output, KEY_TIME * 1000000L, WAIT_TIME * 1000000L);
+		
+		int clearedPieces = 0;
+		int[] preview = new int[PREVIEW_X.length];
+		int[] nextPreview = new int[PREVIEW_X.length];
+		
+		//the move found ahead for the next piece, and the
+		//board and tetrises from before it was placed
+		int[] planned = null;
+		int plannedType = -1;
+		Board saved = new Board(tetris.board.width, tetris.board.height);
+		long savedTetrises = 0;
+		
+		try {
+			while( !tetris.over ) {
+				//the next piece shows up once the last drop is sent
+				scheduler.awaitIdle();
+				int next = nextPiece(preview);
+				if( next == -1 ) {
+					break;
+				}
+				
+				//check the model against the screen. if a move was found
+				//ahead, the screen shows the board from before it
+				if( resync(planned != null ? saved : tetris.board) && planned != null ) {
+					tetris.board.copyFrom(saved);
+					tetris.tetrises = savedTetrises;
+					planned = null;
+				}
+				
+				//the lines cleared are counted from before the move found
+				//ahead, if there is one
+				long tetrises = planned != null ? savedTetrises : tetris.tetrises;
+				
+				//use the move found ahead if it is for this piece,
+				//otherwise put the model back and find it now
+				int[] moves = planned;
+				if( planned == null || plannedType != next ) {
+					if( planned != null ) {
+						tetris.board.copyFrom(saved);
+						tetris.tetrises = savedTetrises;
+					}
+					tetris.addPiece(next);
+					moves = tetris.makeMove(preview, known);
+					tetris.tetrisify();
+				}
+				planned = null;
+				recordPiece(next, moves, (int) (tetris.tetrises - tetrises));
+				if( moves == null ) {
+					break;
+				}
+				clearedPieces++;
+				
+				//send the keys, which happens on the scheduler thread
+				int[] tuck = tetris.moveKeys();
+				if( tuck != null ) {
+					for(int key : tuck) {
+						scheduler.type(key);
+					}
+				} else {
+					for(int r=moves[1]; r>0; r--) {
+						scheduler.type(KeyEvent.VK_UP);
+					}
+					for(int d=moves[0]; d<0; d++) {
+						scheduler.type(KeyEvent.VK_RIGHT);
+					}
+					for(int d=moves[0]; d>0; d--) {
+						scheduler.type(KeyEvent.VK_LEFT);
+					}
+				}
+				scheduler.type(KeyEvent.VK_SPACE);
+				
+				//meanwhile, find the move of the next piece
+				if( known > 0 ) {
+					saved.copyFrom(tetris.board);
+					savedTetrises = tetris.tetrises;
+					
+					plannedType = preview[0];
+					System.arraycopy(preview, 1, nextPreview, 0, known-1);
+					tetris.addPiece(plannedType);
+					planned = tetris.makeMove(nextPreview, known-1);
+					tetris.tetrisify();
+					if( planned == null ) {
+						//the expected piece ends the game, but
+						//wait and see if it is the one that comes
+						tetris.board.copyFrom(saved);
+						tetris.tetrises = savedTetrises;
+						tetris.over = false;
+					}
+				}
+			}
+			
+			//let the last keys go out
+			scheduler.awaitIdle();
+		} finally {
+			scheduler.shutdown();
+		}
+		
+		endGame(clearedPieces);
+		return clearedPieces;
+	}
 }
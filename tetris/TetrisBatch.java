@@ -0,0 +1,403 @@
+package tetris;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongFunction;
+
+/**
+ * A class to play batches of simulated games across every core.
+ *
+ * Each game gets its own seed, split in order from the seed of
+ * the batch, so a batch plays the same games whatever the number
+ * of threads. The games run on a fork-join pool that is kept for
+ * the life of the runner, so it can be shared between batches.
+ *
+ * A batch can be given a budget: a cap on the pieces and time of
+ * each game, a wall clock limit on the whole batch, and a target
+ * confidence interval of the mean game length, after which the
+ * games left for a set of constants aren't played. Games stopped
+ * by a budget are censored (see GameResult).
+ */
+public class TetrisBatch {
+
+	/**
+	 * The pool the games are played on.
+	 */
+	ForkJoinPool pool;
+	/**
+	 * Makes the source of pieces for a game from its seed.
+	 */
+	LongFunction<PieceSource> sources = UniformPieceSource::new;
+	/**
+	 * The number of preview pieces each game searches, and
+	 * the beam width of the search (see TetrisAI.setPreview).
+	 */
+	int preview;
+	int beamWidth;
+	/**
+	 * The capacity of the move cache shared by the games
+	 * with each set of AI constants, or 0 for no cache.
+	 */
+	int cacheCapacity;
+	/**
+	 * The move caches of the sets of AI constants played in
+	 * the last batch, by their constants and board size.
+	 */
+	Map<List<Object>, DecisionCache> caches = new HashMap<List<Object>, DecisionCache>();
+	/**
+	 * Where a replay of every game is written, if anywhere.
+	 */
+	ReplayWriter replays;
+	/**
+	 * Whether moves can tuck and spin, as in TetrisAI.setTucks.
+	 */
+	boolean tucks;
+	/**
+	 * The size of the board of every game, as in
+	 * TetrisAI.setBoardSize.
+	 */
+	int width = Tetris.BOARD_DIMENSIONS.width;
+	int rows = Tetris.BOARD_DIMENSIONS.height - Tetris.VERTICAL_BUFFER;
+	/**
+	 * The budget of each game, as in TetrisAI.setBudget, and
+	 * the wall clock budget of a batch in nanoseconds, or 0
+	 * for no limit.
+	 */
+	long maxPieces;
+	long gameNanos;
+	long batchNanos;
+	/**
+	 * Early stopping: the half width of the 95% confidence
+	 * interval of the mean game length to stop at, as a
+	 * fraction of the mean (or 0 to play every game), and the
+	 * fewest games to play before stopping.
+	 */
+	double relativeError;
+	int minGames;
+	/**
+	 * The standard errors in a 95% confidence interval.
+	 */
+	public final static double Z = 1.96;
+
+	/**
+	 * A constructor for the class. Plays games
+	 * on one thread per core.
+	 */
+	public TetrisBatch() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * A constructor for the class. Plays games
+	 * on the given number of threads.
+	 * @param threads the number of threads
+	 */
+	public TetrisBatch(int threads) {
+		this.pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Set how the pieces of each game are made from its seed,
+	 * such as BagPieceSource::new. By default every piece is
+	 * equally likely.
+	 * @param sources makes the source of pieces for a seed
+	 */
+	public void setPieceSources(LongFunction<PieceSource> sources) {
+		this.sources = sources;
+	}
+
+	/**
+	 * Let every game see the given number of pieces after
+	 * the current one, as in TetrisAI.setPreview.
+	 * @param preview the number of pieces to see, or 0 for none
+	 * @param beamWidth the number of boards the search keeps
+	 */
+	public void setPreview(int preview, int beamWidth) {
+		this.preview = preview;
+		this.beamWidth = beamWidth;
+	}
+
+	/**
+	 * Share the moves chosen by games with the same AI
+	 * constants through a DecisionCache of the given capacity.
+	 * The cache of a set of constants is kept for the next
+	 * batch, so constants that are played again (such as the
+	 * elites of a tuner) find their moves from before; the
+	 * caches of constants the next batch doesn't play are
+	 * dropped.
+	 * @param capacity the most moves to keep for each set of constants, or 0 for no cache
+	 */
+	public void setCacheCapacity(int capacity) {
+		this.cacheCapacity = capacity;
+		caches.clear();
+	}
+
+	/**
+	 * Play every game on a board of the given size.
+	 * @param width the number of columns
+	 * @param rows the number of rows the game is played in
+	 */
+	public void setBoardSize(int width, int rows) {
+		this.width = width;
+		this.rows = rows;
+	}
+
+	/**
+	 * Give every game and every batch a budget. Games still
+	 * being played when the batch runs out of time are stopped,
+	 * and games that haven't started aren't played.
+	 * @param maxPieces the most pieces to play in a game, or 0 for no limit
+	 * @param gameNanos the most time to play a game for in nanoseconds, or 0 for no limit
+	 * @param batchNanos the most time to play a batch for in nanoseconds, or 0 for no limit
+	 */
+	public void setBudget(long maxPieces, long gameNanos, long batchNanos) {
+		this.maxPieces = maxPieces;
+		this.gameNanos = gameNanos;
+		this.batchNanos = batchNanos;
+	}
+
+	/**
+	 * Stop playing games with a set of AI constants once the
+	 * mean game length is known well enough: once the 95%
+	 * confidence interval of the mean is within the given
+	 * fraction of it either way. Only the first games in order
+	 * that have all finished count, since short games finish
+	 * first; the games after them are dropped (and stopped, if
+	 * they are being played), so the result of a batch stopped
+	 * early doesn't depend on the number of threads either.
+	 * @param relativeError the half width of the interval as a fraction of the mean, or 0 to play every game
+	 * @param minGames the fewest games to play before stopping
+	 */
+	public void setEarlyStop(double relativeError, int minGames) {
+		this.relativeError = relativeError;
+		this.minGames = Math.max(minGames, 2);
+	}
+
+	/**
+	 * Write a replay of every game to the given writer.
+	 * @param replays the writer, or null for no replays
+	 */
+	public void setReplays(ReplayWriter replays) {
+		this.replays = replays;
+	}
+
+	/**
+	 * Let the moves of every game tuck and spin under
+	 * overhangs. This can't be used with replays.
+	 * @param tucks whether to find every reachable placement
+	 */
+	public void setTucks(boolean tucks) {
+		this.tucks = tucks;
+	}
+
+	/**
+	 * The seeds for a batch of games, split in order
+	 * from the seed of the batch.
+	 * @param seed the seed of the batch
+	 * @param games the number of games
+	 * @return the seed of each game
+	 */
+	public static long[] seeds(long seed, int games) {
+		SplittableRandom rnd = new SplittableRandom(seed);
+		long[] seeds = new long[games];
+		for(int i=0; i<games; i++) {
+			seeds[i] = rnd.split().nextLong();
+		}
+		return seeds;
+	}
+
+	/**
+	 * Play a batch of games with the given AI constants.
+	 * @param aiConstants the AI constants
+	 * @param seed the seed of the batch
+	 * @param games the number of games to play
+	 * @return the results of the batch
+	 */
+	public BatchResult playGames(double[] aiConstants, long seed, int games) throws InterruptedException {
+		return playGames(aiConstants, seeds(seed, games));
+	}
+
+	/**
+	 * Play one game for each of the given seeds with
+	 * the given AI constants.
+	 * @param aiConstants the AI constants
+	 * @param seeds the seed of each game
+	 * @return the results of the batch
+	 */
+	public BatchResult playGames(double[] aiConstants, long[] seeds) throws InterruptedException {
+		double[][] constants = { aiConstants };
+		return playGames(constants, seeds)[0];
+	}
+
+	/**
+	 * Play one game for each of the given seeds with each of the
+	 * given sets of AI constants. All of the games go to the pool
+	 * at once, so the whole set is played in parallel.
+	 * @param aiConstants the sets of AI constants
+	 * @param seeds the seed of each game
+	 * @return the results of the batch for each set of constants
+	 */
+	public BatchResult[] playGames(double[][] aiConstants, long[] seeds) throws InterruptedException {
+		long start = System.nanoTime();
+		long deadline = batchNanos > 0 ? start + batchNanos : 0;
+		
+		//one task per game, with the caches of these constants only
+		List<Callable<GameResult>> tasks = new ArrayList<Callable<GameResult>>();
+		Games[] played = new Games[aiConstants.length];
+		Map<List<Object>, DecisionCache> kept = new HashMap<List<Object>, DecisionCache>();
+		for(int c=0; c<aiConstants.length; c++) {
+			double[] constants = aiConstants[c];
+			TetrisAI ai = new TetrisAI(constants);
+			ai.setPreview(preview, beamWidth);
+			ai.setReplays(replays);
+			ai.setTucks(tucks);
+			ai.setBoardSize(width, rows);
+			ai.setBudget(maxPieces, gameNanos);
+			if( cacheCapacity > 0 ) {
+				List<Object> key = List.of(Arrays.stream(constants).boxed().toList(), width, rows);
+				DecisionCache cache = kept.get(key);
+				if( cache == null ) {
+					cache = caches.get(key);
+					if( cache == null ) {
+						cache = new DecisionCache(constants, width, rows, cacheCapacity);
+					}
+					kept.put(key, cache);
+				}
+				ai.setCache(cache);
+			}
+			Games games = played[c] = new Games(seeds.length);
+			for(int i=0; i<seeds.length; i++) {
+				long gameSeed = seeds[i];
+				int game = i;
+				tasks.add(() -> {
+					//don't start once the batch is out of time, or stopped
+					if( games.stop.get() || (deadline != 0 && System.nanoTime() - deadline >= 0) ) {
+						return null;
+					}
+					GameResult result = ai.playGame(gameSeed, sources.apply(gameSeed), deadline, games.stop);
+					games.finished(game, result);
+					return result;
+				});
+			}
+		}
+		
+		caches = kept;
+		
+		//play them all, and collect the results in order
+		List<Future<GameResult>> futures = pool.invokeAll(tasks);
+		for(Future<GameResult> future: futures) {
+			result(future);
+		}
+		long wallNanos = System.nanoTime() - start;
+		
+		BatchResult[] results = new BatchResult[aiConstants.length];
+		for(int c=0; c<aiConstants.length; c++) {
+			results[c] = new BatchResult(aiConstants[c], played[c].results(), wallNanos);
+		}
+		return results;
+	}
+
+	/**
+	 * The games of a batch with one set of AI constants, as
+	 * they finish, and whether they have been stopped early.
+	 */
+	class Games {
+		/**
+		 * The result of each game, or null if it hasn't
+		 * finished (or wasn't played).
+		 */
+		final GameResult[] results;
+		/**
+		 * Set to stop the games once the mean is known well
+		 * enough (see setEarlyStop).
+		 */
+		final AtomicBoolean stop = new AtomicBoolean();
+		/**
+		 * The number of games in order that have all finished,
+		 * and the running mean and sum of squared differences
+		 * from the mean of their pieces.
+		 */
+		int finished;
+		double mean;
+		double squares;
+
+		Games(int games) {
+			results = new GameResult[games];
+		}
+
+		/**
+		 * Note a finished game, and stop the rest if the games
+		 * in order so far are enough.
+		 */
+		synchronized void finished(int game, GameResult result) {
+			if( stop.get() ) {
+				//past where the games stopped, so dropped
+				return;
+			}
+			results[game] = result;
+			while( finished < results.length && results[finished] != null ) {
+				//add the next game in order to the mean (Welford's method)
+				double pieces = results[finished++].pieces;
+				double delta = pieces - mean;
+				mean += delta / finished;
+				squares += delta * (pieces - mean);
+				
+				//check after every game, so the games it stops at
+				//don't depend on the order they finished in
+				if( relativeError > 0 && finished >= minGames && finished < results.length ) {
+					double halfWidth = Z * Math.sqrt(squares / (finished - 1) / finished);
+					if( halfWidth <= relativeError * mean ) {
+						stop.set(true);
+						return;
+					}
+				}
+			}
+		}
+
+		/**
+		 * The results of the games that count, in order.
+		 */
+		synchronized GameResult[] results() {
+			if( stop.get() ) {
+				return Arrays.copyOf(results, finished);
+			}
+			//without early stopping, every game that was played
+			List<GameResult> games = new ArrayList<GameResult>();
+			for(GameResult result: results) {
+				if( result != null ) {
+					games.add(result);
+				}
+			}
+			return games.toArray(new GameResult[0]);
+		}
+	}
+
+	/**
+	 * Get the result of a finished game.
+	 * @param future the game
+	 * @return the result
+	 */
+	static GameResult result(Future<GameResult> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException("game failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Stop the pool once every game has been played.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+}
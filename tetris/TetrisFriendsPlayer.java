@@ -14,6 +14,8 @@ public class TetrisFriendsPlayer extends TetrisAIPlayer {
 		this.pieceStrings = tempStrings;
 		this.WAIT_TIME = 65;
 		this.KEY_TIME = 65;
+		this.POLL_TIME = 65;
+		this.COLOR_TOLERANCE = 12;
 		this.tetris = new Tetris();
 	}
 
@@ -0,0 +1,258 @@
+package tetris;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * A class to tune the AI constants with a genetic algorithm.
+ *
+ * Each generation, every member of the population plays the same
+ * games (the same seeds, so the same pieces), which takes most of
+ * the luck out of comparing them. If the batch stops early (see
+ * TetrisBatch.setEarlyStop), members are compared on the games
+ * they all played. The whole population is played
+ * at once on one TetrisBatch, whose pool is kept between
+ * generations. The fittest members are kept, and the rest of the
+ * next generation is bred from the fitter half by crossover and
+ * mutation.
+ *
+ * Scaling every constant by the same positive amount doesn't
+ * change which move is best, so each member is scaled to have
+ * length 1 to keep the search from wandering along that direction.
+ */
+public class TetrisTuner {
+
+	/**
+	 * The settings of the search.
+	 */
+	public int POPULATION = 24;
+	public int GAMES = 32;
+	public int ELITE = 4;
+	public double MUTATION = 0.1;
+
+	/**
+	 * The runner for the games.
+	 */
+	TetrisBatch batch;
+	/**
+	 * The random number generator for the search
+	 * and for the seeds of each generation.
+	 */
+	SplittableRandom rnd;
+	/**
+	 * The constants the population starts around.
+	 */
+	double[] start;
+	/**
+	 * The current population, and the fitness of each
+	 * member once it has been played (the mean pieces
+	 * per game), best first.
+	 */
+	double[][] population;
+	double[] fitness;
+	/**
+	 * The number of generations played so far.
+	 */
+	int generation;
+
+	/**
+	 * A constructor for the class. Starts the population
+	 * around the given constants.
+	 * @param batch the runner to play games on
+	 * @param start the constants to start from
+	 * @param seed the seed of the search
+	 */
+	public TetrisTuner(TetrisBatch batch, double[] start, long seed) {
+		this.batch = batch;
+		this.rnd = new SplittableRandom(seed);
+		this.start = normalize(start.clone());
+	}
+
+	/**
+	 * Set the size of the population. The next generation is
+	 * bred from the better half, so there must be at least two.
+	 * @param population the number of members
+	 */
+	public void setPopulation(int population) {
+		checkPopulation(population);
+		this.POPULATION = population;
+	}
+
+	/**
+	 * Check that a population is big enough to breed from.
+	 */
+	static void checkPopulation(int population) {
+		if( population < 2 ) {
+			throw new IllegalArgumentException("population must be at least 2 to breed from its better half: " + population);
+		}
+	}
+
+	/**
+	 * Make the first population: the start itself,
+	 * and mutations of it.
+	 */
+	void initialize() {
+		checkPopulation(POPULATION);
+		population = new double[POPULATION][];
+		population[0] = start.clone();
+		for(int i=1; i<POPULATION; i++) {
+			population[i] = mutate(start.clone(), 3*MUTATION);
+		}
+		generation = 0;
+	}
+
+	/**
+	 * Play one generation: play every member of the population
+	 * on the same games, sort the population by fitness (the mean
+	 * pieces over the games every member played), and breed the
+	 * next one.
+	 * @return the results of the generation, best first
+	 */
+	public BatchResult[] step() throws InterruptedException {
+		if( population == null ) {
+			initialize();
+		}
+		
+		//every member plays the same games
+		long[] seeds = TetrisBatch.seeds(rnd.nextLong(), GAMES);
+		BatchResult[] results = batch.playGames(population, seeds);
+		
+		//sort best first, on the games every member played
+		int common = GAMES;
+		for(BatchResult result: results) {
+			common = Math.min(common, result.games.length);
+		}
+		int played = common;
+		Arrays.sort(results, (a, b) -> Double.compare(b.meanPieces(played), a.meanPieces(played)));
+		fitness = new double[results.length];
+		for(int i=0; i<results.length; i++) {
+			population[i] = results[i].constants;
+			fitness[i] = results[i].meanPieces(played);
+		}
+		
+		//keep the elite, breed the rest from the better half
+		double[][] next = new double[POPULATION][];
+		for(int i=0; i<POPULATION; i++) {
+			if( i < ELITE ) {
+				next[i] = population[i];
+			} else {
+				double[] a = population[rnd.nextInt(POPULATION/2)];
+				double[] b = population[rnd.nextInt(POPULATION/2)];
+				next[i] = mutate(crossover(a, b), MUTATION);
+			}
+		}
+		population = next;
+		generation++;
+		
+		return results;
+	}
+
+	/**
+	 * Blend two members: each constant is a random
+	 * mix of the constants of the parents.
+	 * @param a a parent
+	 * @param b the other parent
+	 * @return the child
+	 */
+	double[] crossover(double[] a, double[] b) {
+		double[] child = new double[a.length];
+		for(int i=0; i<a.length; i++) {
+			double t = rnd.nextDouble();
+			child[i] = t*a[i] + (1-t)*b[i];
+		}
+		return child;
+	}
+
+	/**
+	 * Add gaussian noise to each constant, then scale
+	 * to length 1.
+	 * @param constants the constants, changed in place
+	 * @param sigma the size of the noise
+	 * @return the constants
+	 */
+	double[] mutate(double[] constants, double sigma) {
+		for(int i=0; i<constants.length; i++) {
+			constants[i] += sigma * gaussian();
+		}
+		return normalize(constants);
+	}
+
+	/**
+	 * A standard normal random number.
+	 * @return the number
+	 */
+	double gaussian() {
+		//Box-Muller, so the search only depends on its seed
+		double u = 1 - rnd.nextDouble();
+		double v = rnd.nextDouble();
+		return Math.sqrt(-2*Math.log(u)) * Math.cos(2*Math.PI*v);
+	}
+
+	/**
+	 * Scale constants to length 1.
+	 * @param constants the constants, changed in place
+	 * @return the constants
+	 */
+	static double[] normalize(double[] constants) {
+		double length = 0;
+		for(double c: constants) {
+			length += c*c;
+		}
+		length = Math.sqrt(length);
+		if( length > 0 ) {
+			for(int i=0; i<constants.length; i++) {
+				constants[i] /= length;
+			}
+		}
+		return constants;
+	}
+
+	/**
+	 * The best constants of the last generation played.
+	 * @return the best constants
+	 */
+	public double[] best() {
+		return population == null ? start : population[0];
+	}
+
+	/**
+	 * Tune the AI constants, printing the progress
+	 * of each generation.
+	 *
+	 * Usage: TetrisTuner [generations] [population] [games] [seed] [maxPieces]
+	 *
+	 * Games stop after maxPieces pieces (100000 by default). Every
+	 * member plays every game, so they are all compared on the same
+	 * games.
+	 */
+	public static void main(String[] args) throws Exception {
+		int generations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		double[] start = {0.7079009304384309, 3.8753536098633123, 7.015729027236182, 5.720294020792873};
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+		long maxPieces = args.length > 4 ? Long.parseLong(args[4]) : 100000;
+		
+		Metrics.registerMBean();
+		TetrisBatch batch = new TetrisBatch();
+		batch.setBudget(maxPieces, 0, 0);
+		TetrisTuner tuner = new TetrisTuner(batch, start, seed);
+		if( args.length > 1 ) tuner.setPopulation(Integer.parseInt(args[1]));
+		if( args.length > 2 ) tuner.GAMES = Integer.parseInt(args[2]);
+		
+		for(int g=0; g<generations; g++) {
+			BatchResult[] results = tuner.step();
+			
+			//the games of a generation are played all at once
+			long games = 0, pieces = 0;
+			for(BatchResult result: results) {
+				games += result.games.length;
+				pieces += result.pieces;
+			}
+			double seconds = results[0].wallNanos / 1e9;
+			
+			System.out.println("generation " + g + ": best " + tuner.fitness[0]
+					+ " " + Arrays.toString(results[0].constants));
+			System.out.println("\tgames/sec: " + games/seconds + " pieces/sec: " + pieces/seconds);
+		}
+		batch.shutdown();
+	}
+}
@@ -0,0 +1,62 @@
+package tetris;
+
+/**
+ * A source of pieces where every piece is equally
+ * likely, drawn from a seeded random number generator.
+ *
+ * The pieces are the ones SplittableRandom.nextInt(7) draws
+ * for a generator made with the same seed, but the state of
+ * the generator is a single long, so many games can keep
+ * theirs side by side in an array (see LockstepGames).
+ */
+public class UniformPieceSource implements PieceSource {
+
+	/**
+	 * How much the seed goes up with each number drawn (the
+	 * golden gamma of SplittableRandom).
+	 */
+	final static long GAMMA = 0x9E3779B97F4A7C15L;
+	/**
+	 * The state of the generator, in an array of one
+	 * so it is drawn from by next(long[], int).
+	 */
+	final long[] seed;
+
+	/**
+	 * Constructor
+	 * @param seed the seed of the random number generator
+	 */
+	public UniformPieceSource(long seed) {
+		this.seed = new long[] {seed};
+	}
+
+	public int next() {
+		return next(seed, 0);
+	}
+
+	/**
+	 * Draw a piece from one of an array of generator states,
+	 * and move that state on.
+	 * @param seeds the states
+	 * @param i the index of the state to draw from
+	 * @return the type of the piece
+	 */
+	static int next(long[] seeds, int i) {
+		long seed = seeds[i] + GAMMA;
+		int r = mix32(seed);
+		//draw again in the top of the range, which 7 doesn't divide evenly
+		for(int u=r >>> 1; u + 6 - (r = u % 7) < 0; u=mix32(seed) >>> 1) {
+			seed += GAMMA;
+		}
+		seeds[i] = seed;
+		return r;
+	}
+
+	/**
+	 * Scramble a state into 32 random bits, as SplittableRandom does.
+	 */
+	static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62A9D9ED799705F5L;
+		return (int) (((z ^ (z >>> 28)) * 0xCB24D0A5C88C35B3L) >>> 32);
+	}
+}
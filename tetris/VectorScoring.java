@@ -0,0 +1,58 @@
+package tetris;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Scores candidate moves with the incubating Vector API, as many
+ * moves at a time as the machine's widest vectors of doubles hold.
+ *
+ * This class is only loaded if the jdk.incubator.vector module is
+ * there (java --add-modules jdk.incubator.vector); otherwise
+ * Evaluator scores the moves with the same loop in plain Java.
+ * Each lane adds up its features in the same order as the plain
+ * loop, with a multiply and then an add, so both give exactly the
+ * same scores.
+ */
+final class VectorScoring {
+
+	/**
+	 * The widest vectors of doubles on this machine.
+	 */
+	final static VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private VectorScoring() {
+	}
+
+	/**
+	 * Score moves from their features.
+	 * @param weights the weight of each feature
+	 * @param active the features with a weight, in order
+	 * @param activeCount the number of features with a weight
+	 * @param features the features of the moves, by feature and then by move
+	 * @param scores where to put the score of each move
+	 * @param count the number of moves
+	 */
+	static void score(double[] weights, int[] active, int activeCount,
+			double[][] features, double[] scores, int count) {
+		int lanes = SPECIES.loopBound(count);
+		int m = 0;
+		for(; m<lanes; m+=SPECIES.length()) {
+			DoubleVector score = DoubleVector.zero(SPECIES);
+			for(int a=0; a<activeCount; a++) {
+				int f = active[a];
+				score = score.add(DoubleVector.fromArray(SPECIES, features[f], m).mul(weights[f]));
+			}
+			score.intoArray(scores, m);
+		}
+		//the moves left over
+		for(; m<count; m++) {
+			double score = 0;
+			for(int a=0; a<activeCount; a++) {
+				int f = active[a];
+				score += features[f][m] * weights[f];
+			}
+			scores[m] = score;
+		}
+	}
+}